@@ -0,0 +1,131 @@
+package com.bartczak.todo;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+
+import androidx.lifecycle.LiveData;
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkInfo;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.io.BufferedOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.UUID;
+
+// Runs TaskArchive exports and imports in the background, one after the other. The
+// output holds the number of tasks, or the error message when the archive could not be
+// written or read.
+public class ArchiveWorker extends Worker {
+
+    public static final String KEY_TASKS = "tasks";
+    public static final String KEY_ERROR = "error";
+
+    private static final String WORK_NAME = "archive";
+    private static final String KEY_ACTION = "action";
+    private static final String KEY_URI = "uri";
+    private static final String ACTION_EXPORT = "export";
+    private static final String ACTION_IMPORT = "import";
+
+    private final Context context;
+
+    public ArchiveWorker(Context context, WorkerParameters workerParams) {
+        super(context, workerParams);
+        this.context = context;
+    }
+
+    // The caller should hold a persisted write permission on uri, which the worker
+    // releases when done.
+    public static UUID export(Context context, Uri uri) {
+        return enqueue(context, ACTION_EXPORT, uri);
+    }
+
+    // Same as export, with a persisted read permission.
+    public static UUID importFrom(Context context, Uri uri) {
+        return enqueue(context, ACTION_IMPORT, uri);
+    }
+
+    // Every export and import, queued or finished, while WorkManager keeps them.
+    public static LiveData<List<WorkInfo>> getWorkInfos(Context context) {
+        return WorkManager.getInstance(context).getWorkInfosForUniqueWorkLiveData(WORK_NAME);
+    }
+
+    public static boolean isImport(WorkInfo info) {
+        return info.getTags().contains(ACTION_IMPORT);
+    }
+
+    private static UUID enqueue(Context context, String action, Uri uri) {
+        Data input = new Data.Builder()
+                .putString(KEY_ACTION, action)
+                .putString(KEY_URI, uri.toString())
+                .build();
+        OneTimeWorkRequest workRequest = new OneTimeWorkRequest.Builder(ArchiveWorker.class)
+                .setInputData(input)
+                .addTag(action)
+                .build();
+        WorkManager.getInstance(context)
+                .enqueueUniqueWork(WORK_NAME, ExistingWorkPolicy.APPEND_OR_REPLACE, workRequest);
+        return workRequest.getId();
+    }
+
+    @Override
+    public Result doWork() {
+        String action = getInputData().getString(KEY_ACTION);
+        Uri uri = Uri.parse(getInputData().getString(KEY_URI));
+        ContentResolver contentResolver = context.getContentResolver();
+        TaskArchive archive = new TaskArchive(context);
+        boolean export = ACTION_EXPORT.equals(action);
+        try {
+            int tasks = export ? export(archive, contentResolver, uri) : importFrom(archive, contentResolver, uri);
+            return Result.success(new Data.Builder().putInt(KEY_TASKS, tasks).build());
+        } catch (IOException e) {
+            return Result.failure(new Data.Builder().putString(KEY_ERROR, e.getMessage()).build());
+        } finally {
+            try {
+                contentResolver.releasePersistableUriPermission(uri, export
+                        ? Intent.FLAG_GRANT_WRITE_URI_PERMISSION : Intent.FLAG_GRANT_READ_URI_PERMISSION);
+            } catch (SecurityException e) {
+                // The permission was not persisted, nothing to release.
+            }
+        }
+    }
+
+    private static int export(TaskArchive archive, ContentResolver contentResolver, Uri uri) throws IOException {
+        try (OutputStream out = contentResolver.openOutputStream(uri, "wt")) {
+            if (out == null) {
+                throw new FileNotFoundException("Could not open " + uri);
+            }
+            BufferedOutputStream buffered = new BufferedOutputStream(out, ChannelCopier.BUFFER_SIZE);
+            int tasks = archive.export(buffered);
+            buffered.flush();
+            return tasks;
+        }
+    }
+
+    // Imported rows bypass the repositories, so their caches are dropped afterwards,
+    // also when the import failed halfway.
+    private int importFrom(TaskArchive archive, ContentResolver contentResolver, Uri uri) throws IOException {
+        try {
+            return archive.importFrom(() -> {
+                InputStream in = contentResolver.openInputStream(uri);
+                if (in == null) {
+                    throw new FileNotFoundException("Could not open " + uri);
+                }
+                return in;
+            });
+        } finally {
+            TaskRepository.getInstance(context).invalidate();
+            CategoryRepository.getInstance(context).invalidate();
+            ReminderScheduler.reschedule(context);
+        }
+    }
+}
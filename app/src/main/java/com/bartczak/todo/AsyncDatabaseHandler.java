@@ -0,0 +1,221 @@
+package com.bartczak.todo;
+
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+public class AsyncDatabaseHandler implements LifecycleEventObserver {
+
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    private static final String TAG = "TodoDatabase";
+    private static final int READER_THREADS = 3;
+
+    private static final ExecutorService readExecutor = Executors.newFixedThreadPool(READER_THREADS);
+    private static final ExecutorService writeExecutor = Executors.newSingleThreadExecutor();
+
+    private final DatabaseHandler db;
+    private final TaskRepository repository;
+    private final CategoryRepository categories;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Set<Operation<?>> pending = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private volatile boolean destroyed = false;
+
+    public AsyncDatabaseHandler(AppCompatActivity activity) {
+        this.db = DatabaseHandler.getInstance(activity);
+        this.repository = TaskRepository.getInstance(activity);
+        this.categories = CategoryRepository.getInstance(activity);
+        activity.getLifecycle().addObserver(this);
+    }
+
+    public Future<?> getTasks(TaskFilter filter, Callback<List<Task>> callback) {
+        CancellationSignal cancellationSignal = new CancellationSignal();
+        return submit(new Operation<>(() -> repository.getTasks(filter, cancellationSignal), callback, true, cancellationSignal));
+    }
+
+    public Future<?> getTask(int id, Callback<Task> callback) {
+        return read(() -> repository.getTask(id), callback);
+    }
+
+    public Future<?> getTasksByIds(List<Integer> ids, Callback<List<Task>> callback) {
+        return read(() -> repository.getTasksByIds(ids), callback);
+    }
+
+    public Future<?> getTasksPage(TaskFilter filter, TaskPageKey after, int pageSize, Callback<TaskPage> callback) {
+        return read(() -> repository.getTasksPage(filter, after, pageSize), callback);
+    }
+
+    public Future<?> addTask(Task task, Runnable onComplete) {
+        return write(() -> repository.addTask(task), onComplete);
+    }
+
+    public Future<?> updateTask(Task task, Runnable onComplete) {
+        return write(() -> repository.updateTask(task), onComplete);
+    }
+
+    public Future<?> deleteTask(int id, Runnable onComplete) {
+        return write(() -> repository.deleteTask(id), onComplete);
+    }
+
+    public Future<?> addTasks(List<Task> tasks, Runnable onComplete) {
+        return write(() -> repository.addTasks(tasks), onComplete);
+    }
+
+    public Future<?> updateTasks(List<Task> tasks, Runnable onComplete) {
+        return write(() -> repository.updateTasks(tasks), onComplete);
+    }
+
+    public Future<?> deleteTasks(List<Integer> ids, Runnable onComplete) {
+        return write(() -> repository.deleteTasks(ids), onComplete);
+    }
+
+    public Future<?> setDone(List<Integer> ids, boolean done, Runnable onComplete) {
+        return write(() -> repository.setDone(ids, done), onComplete);
+    }
+
+    public Future<?> setCategory(List<Integer> ids, int categoryId, Runnable onComplete) {
+        return write(() -> repository.setCategory(ids, categoryId), onComplete);
+    }
+
+    public Future<?> getCategoriesWithTaskCounts(Callback<List<Category>> callback) {
+        return read(() -> categories.getAllWithTaskCounts(repository.getTaskCountsByCategory()), callback);
+    }
+
+    public Future<?> getCategoryById(int id, Callback<Category> callback) {
+        return read(() -> categories.get(id), callback);
+    }
+
+    public Future<?> addCategory(Category category, Runnable onComplete) {
+        return write(() -> categories.add(category), onComplete);
+    }
+
+    public Future<?> deleteCategory(int id, Runnable onComplete) {
+        return write(() -> {
+            categories.delete(id);
+            repository.onCategoryDeleted();
+        }, onComplete);
+    }
+
+    public Future<?> getTaskStatistics(LocalDateTime now, DayOfWeek firstDayOfWeek, Callback<TaskStatistics> callback) {
+        return read(() -> db.getTaskStatistics(now, firstDayOfWeek), callback);
+    }
+
+    public Future<?> getAttachment(String hash, Callback<Attachment> callback) {
+        return read(() -> db.getAttachment(hash), callback);
+    }
+
+    @Override
+    public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
+        if (event == Lifecycle.Event.ON_DESTROY) {
+            destroyed = true;
+            source.getLifecycle().removeObserver(this);
+            for (Operation<?> operation : pending) {
+                if (operation.cancellable) {
+                    operation.cancel(false);
+                }
+            }
+        }
+    }
+
+    private <T> Future<?> read(Callable<T> query, Callback<T> callback) {
+        return submit(new Operation<>(query, callback, true, null));
+    }
+
+    private Future<?> write(Runnable statement, Runnable onComplete) {
+        Callable<Void> callable = () -> {
+            statement.run();
+            return null;
+        };
+        return submit(new Operation<Void>(callable, onComplete == null ? null : result -> onComplete.run(), false, null));
+    }
+
+    private Future<?> submit(Operation<?> operation) {
+        if (destroyed && operation.cancellable) {
+            operation.cancel(false);
+            return operation;
+        }
+        pending.add(operation);
+        if (operation.cancellable) {
+            readExecutor.execute(operation);
+        } else {
+            writeExecutor.execute(operation);
+        }
+        return operation;
+    }
+
+    private class Operation<T> extends FutureTask<T> {
+
+        private final Callback<T> callback;
+        private final boolean cancellable;
+        private final CancellationSignal cancellationSignal;
+
+        Operation(Callable<T> callable, Callback<T> callback, boolean cancellable, CancellationSignal cancellationSignal) {
+            super(callable);
+            this.callback = callback;
+            this.cancellable = cancellable;
+            this.cancellationSignal = cancellationSignal;
+        }
+
+        // Also aborts a query that is already running, not just one still queued.
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled && cancellationSignal != null) {
+                cancellationSignal.cancel();
+            }
+            return cancelled;
+        }
+
+        @Override
+        protected void done() {
+            pending.remove(this);
+            if (isCancelled()) {
+                return;
+            }
+
+            final T result;
+            try {
+                result = get();
+            } catch (ExecutionException e) {
+                // Logged and dropped: the callback is not run, and throwing on the main
+                // thread would take the whole app down for one failed query.
+                Log.e(TAG, "Database operation failed", e.getCause());
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            if (callback == null) {
+                return;
+            }
+            mainHandler.post(() -> {
+                if (!destroyed && !isCancelled()) {
+                    callback.onResult(result);
+                }
+            });
+        }
+    }
+}
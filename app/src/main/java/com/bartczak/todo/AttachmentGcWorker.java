@@ -0,0 +1,44 @@
+package com.bartczak.todo;
+
+import android.content.Context;
+
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.util.concurrent.TimeUnit;
+
+// Removes attachment files no task has referenced for a while, and moves attachments
+// saved before the store existed into it.
+public class AttachmentGcWorker extends Worker {
+
+    private static final String WORK_NAME = "attachment_gc";
+
+    private final Context context;
+
+    public AttachmentGcWorker(Context context, WorkerParameters workerParams) {
+        super(context, workerParams);
+        this.context = context;
+    }
+
+    // Keeps the existing schedule, so calling this on every start is cheap.
+    public static void schedule(Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiresBatteryNotLow(true)
+                .build();
+        PeriodicWorkRequest workRequest = new PeriodicWorkRequest.Builder(AttachmentGcWorker.class, 1, TimeUnit.DAYS)
+                .setConstraints(constraints)
+                .build();
+        WorkManager.getInstance(context)
+                .enqueueUniquePeriodicWork(WORK_NAME, ExistingPeriodicWorkPolicy.KEEP, workRequest);
+    }
+
+    @Override
+    public Result doWork() {
+        AttachmentStore.getInstance(context).collectGarbage();
+        return Result.success();
+    }
+}
@@ -0,0 +1,94 @@
+package com.bartczak.todo;
+
+import android.app.Application;
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
+
+import java.io.IOException;
+import java.util.concurrent.Future;
+
+// Holds the attachment import of NewTaskActivity, so it keeps running when the activity
+// is recreated for a configuration change. The new activity sets its listener again and
+// gets the last progress, a result that arrived in between is handed over then. The
+// import is cancelled once the activity finishes for good.
+public class AttachmentImportViewModel extends AndroidViewModel implements AttachmentImporter.Listener {
+
+    private final AttachmentImporter importer;
+    private Future<?> pendingImport;
+    private AttachmentImporter.Listener listener;
+    private int percent = -1;
+    private Attachment undelivered;
+    private IOException undeliveredFailure;
+
+    public AttachmentImportViewModel(@NonNull Application application) {
+        super(application);
+        importer = new AttachmentImporter(application.getContentResolver(), AttachmentStore.getInstance(application));
+    }
+
+    public boolean isImporting() {
+        return pendingImport != null;
+    }
+
+    public void start(Uri uri, String name) {
+        cancel();
+        percent = -1;
+        undelivered = null;
+        undeliveredFailure = null;
+        pendingImport = importer.importFile(uri, name, this);
+    }
+
+    // The importer deletes the partial copy itself.
+    public void cancel() {
+        if (pendingImport != null) {
+            pendingImport.cancel(true);
+            pendingImport = null;
+        }
+    }
+
+    public void setListener(AttachmentImporter.Listener listener) {
+        this.listener = listener;
+        if (listener == null) {
+            return;
+        }
+        if (pendingImport != null) {
+            listener.onProgress(percent);
+        } else if (undelivered != null) {
+            onComplete(undelivered);
+        } else if (undeliveredFailure != null) {
+            onFailure(undeliveredFailure);
+        }
+    }
+
+    @Override
+    public void onProgress(int percent) {
+        this.percent = percent;
+        if (listener != null) {
+            listener.onProgress(percent);
+        }
+    }
+
+    @Override
+    public void onComplete(Attachment attachment) {
+        pendingImport = null;
+        undelivered = listener == null ? attachment : null;
+        if (listener != null) {
+            listener.onComplete(attachment);
+        }
+    }
+
+    @Override
+    public void onFailure(IOException e) {
+        pendingImport = null;
+        undeliveredFailure = listener == null ? e : null;
+        if (listener != null) {
+            listener.onFailure(e);
+        }
+    }
+
+    @Override
+    protected void onCleared() {
+        cancel();
+    }
+}
@@ -0,0 +1,143 @@
+package com.bartczak.todo;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.security.MessageDigest;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+// Copies picked files into the AttachmentStore off the main thread, hashing them in the
+// same pass. Callbacks run on the main thread and stop as soon as the returned Future is
+// cancelled; a cancelled or failed import never leaves a partial file behind.
+public class AttachmentImporter {
+
+    public interface Listener {
+        void onProgress(int percent);
+
+        void onComplete(Attachment attachment);
+
+        void onFailure(IOException e);
+    }
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private final ContentResolver contentResolver;
+    private final AttachmentStore store;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public AttachmentImporter(ContentResolver contentResolver, AttachmentStore store) {
+        this.contentResolver = contentResolver;
+        this.store = store;
+    }
+
+    public Future<?> importFile(Uri uri, String name, Listener listener) {
+        Import job = new Import(uri, name, listener);
+        FutureTask<Void> task = new FutureTask<>(job);
+        job.future = task;
+        executor.execute(task);
+        return task;
+    }
+
+    private class Import implements Callable<Void> {
+
+        private final Uri uri;
+        private final String name;
+        private final Listener listener;
+        private Future<?> future;
+        private int lastPercent = -1;
+
+        Import(Uri uri, String name, Listener listener) {
+            this.uri = uri;
+            this.name = name;
+            this.listener = listener;
+        }
+
+        @Override
+        public Void call() {
+            File destination = null;
+            boolean complete = false;
+            try {
+                destination = store.createTempFile();
+                MessageDigest digest = AttachmentStore.newDigest();
+                long size = copy(uri, destination, digest, (copied, total) -> {
+                    int percent = total > 0 ? (int) (copied * 100 / total) : -1;
+                    if (percent != lastPercent) {
+                        lastPercent = percent;
+                        post(() -> listener.onProgress(percent));
+                    }
+                });
+
+                Attachment attachment = new Attachment();
+                attachment.setHash(AttachmentStore.toHex(digest.digest()));
+                attachment.setName(name);
+                attachment.setSize(size);
+                attachment.setMimeType(contentResolver.getType(uri));
+                store.commit(destination, attachment);
+                complete = true;
+                post(() -> listener.onComplete(attachment));
+            } catch (CancellationException e) {
+                // Cancelled by the caller, nothing to report.
+            } catch (IOException e) {
+                post(() -> listener.onFailure(e));
+            } finally {
+                if (!complete && destination != null) {
+                    destination.delete();
+                }
+            }
+            return null;
+        }
+
+        private void post(Runnable callback) {
+            mainHandler.post(() -> {
+                if (!future.isCancelled()) {
+                    callback.run();
+                }
+            });
+        }
+    }
+
+    // Prefers a file descriptor, which gives the size for progress. Providers that only
+    // stream fall back to indeterminate progress. Both go through ChannelCopier's buffer,
+    // also for a regular file: the hash needs the bytes, and transferTo followed by a
+    // second pass to hash the copy would read every byte twice.
+    private long copy(Uri uri, File destination, MessageDigest digest, ChannelCopier.Listener listener)
+            throws IOException {
+        ParcelFileDescriptor descriptor;
+        try {
+            descriptor = contentResolver.openFileDescriptor(uri, "r");
+        } catch (FileNotFoundException e) {
+            descriptor = null;
+        }
+
+        try (FileOutputStream out = new FileOutputStream(destination)) {
+            if (descriptor != null) {
+                try (ParcelFileDescriptor fd = descriptor;
+                     FileInputStream in = new FileInputStream(fd.getFileDescriptor())) {
+                    return ChannelCopier.copy(in.getChannel(), out.getChannel(), fd.getStatSize(), digest, listener);
+                }
+            }
+
+            try (InputStream in = contentResolver.openInputStream(uri)) {
+                if (in == null) {
+                    throw new FileNotFoundException("Could not open " + uri);
+                }
+                return ChannelCopier.copy(Channels.newChannel(in), out.getChannel(), -1, digest, listener);
+            }
+        }
+    }
+}
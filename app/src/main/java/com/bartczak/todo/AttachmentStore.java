@@ -0,0 +1,166 @@
+package com.bartczak.todo;
+
+import android.content.Context;
+import android.webkit.MimeTypeMap;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Stores each attachment once, under the SHA-256 of its content. Tasks reference blobs
+// by hash and the attachments table counts those references through triggers, so a
+// blob is only removed by collectGarbage once nothing has used it for a while.
+public final class AttachmentStore {
+
+    private static final String DIRECTORY = "attachments";
+    private static final String TEMP_PREFIX = ".import-";
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    // Keeps a blob around after its last task is deleted or edited, and gives imports
+    // that are still being copied or not yet saved time to finish.
+    private static final long GRACE_PERIOD_MS = TimeUnit.DAYS.toMillis(1);
+
+    private static AttachmentStore instance;
+
+    private final File directory;
+    private final DatabaseHandler db;
+    private final TaskRepository repository;
+
+    public static synchronized AttachmentStore getInstance(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            instance = new AttachmentStore(appContext.getExternalFilesDir(DIRECTORY),
+                    DatabaseHandler.getInstance(appContext), TaskRepository.getInstance(appContext));
+        }
+        return instance;
+    }
+
+    // Package-private so tests can use a directory and database of their own; the
+    // repository is only needed by collectGarbage.
+    AttachmentStore(File directory, DatabaseHandler db, TaskRepository repository) {
+        this.directory = directory;
+        this.db = db;
+        this.repository = repository;
+    }
+
+    public File createTempFile() throws IOException {
+        return File.createTempFile(TEMP_PREFIX, null, directory);
+    }
+
+    // Accepts a hash as well as the absolute paths and bare file names that tasks
+    // stored before the store existed.
+    public File resolve(String reference) {
+        File file = new File(reference);
+        if (file.isAbsolute()) {
+            return file;
+        }
+        return new File(directory, reference);
+    }
+
+    public Attachment getAttachment(String hash) {
+        return db.getAttachment(hash);
+    }
+
+    // Moves a finished import into place. When the same content is already stored the
+    // copy is dropped and the existing blob is reused.
+    public synchronized Attachment commit(File tempFile, Attachment attachment) throws IOException {
+        File blob = new File(directory, attachment.getHash());
+        if (blob.exists()) {
+            tempFile.delete();
+        } else if (!tempFile.renameTo(blob)) {
+            tempFile.delete();
+            throw new IOException("Could not store " + attachment.getName());
+        }
+        db.addAttachment(attachment, System.currentTimeMillis());
+        return attachment;
+    }
+
+    public synchronized void collectGarbage() {
+        long cutoff = System.currentTimeMillis() - GRACE_PERIOD_MS;
+        Set<String> legacyFiles = adoptLegacyAttachments();
+
+        for (String hash : db.getUnreferencedAttachments(cutoff)) {
+            if (db.deleteUnreferencedAttachment(hash)) {
+                new File(directory, hash).delete();
+            }
+        }
+
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Set<String> stored = new HashSet<>(db.getAttachmentHashes());
+        for (File file : files) {
+            String name = file.getName();
+            if (stored.contains(name) || legacyFiles.contains(name) || file.lastModified() >= cutoff) {
+                continue;
+            }
+            file.delete();
+        }
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static String toHex(byte[] digest) {
+        StringBuilder hex = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            hex.append(String.format(Locale.ROOT, "%02x", b));
+        }
+        return hex.toString();
+    }
+
+    // Moves files still referenced by path into the store. Returns the names of the
+    // ones that could not be read yet, so the sweep leaves them alone.
+    private Set<String> adoptLegacyAttachments() {
+        Set<String> remaining = new HashSet<>();
+        for (Map.Entry<Integer, String> entry : db.getLegacyAttachments().entrySet()) {
+            File file = resolve(entry.getValue());
+            if (!file.exists()) {
+                repository.setAttachment(entry.getKey(), null);
+                continue;
+            }
+            try {
+                Attachment attachment = adopt(file);
+                repository.setAttachment(entry.getKey(), attachment.getHash());
+            } catch (IOException e) {
+                remaining.add(file.getName());
+            }
+        }
+        return remaining;
+    }
+
+    // Copied rather than moved: another task may still reference the same path and is
+    // adopted later in this pass. The original is swept once nothing points at it.
+    private Attachment adopt(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        File temp = createTempFile();
+        try (FileInputStream in = new FileInputStream(file); FileOutputStream out = new FileOutputStream(temp)) {
+            ChannelCopier.copy(in.getChannel(), out.getChannel(), file.length(), digest, null);
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+
+        Attachment attachment = new Attachment();
+        attachment.setHash(toHex(digest.digest()));
+        attachment.setName(file.getName());
+        attachment.setSize(temp.length());
+        String extension = MimeTypeMap.getFileExtensionFromUrl(file.getName());
+        attachment.setMimeType(MimeTypeMap.getSingleton().getMimeTypeFromExtension(extension));
+        return commit(temp, attachment);
+    }
+}
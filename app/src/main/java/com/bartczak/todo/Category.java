@@ -4,6 +4,7 @@ public class Category {
 
         private int id;
         private String name;
+        private int taskCount;
 
         public int getId() {
             return id;
@@ -20,4 +21,13 @@ public class Category {
         public void setName(String name) {
             this.name = name;
         }
+
+        // Only filled in by CategoryRepository.getAllWithTaskCounts.
+        public int getTaskCount() {
+            return taskCount;
+        }
+
+        public void setTaskCount(int taskCount) {
+            this.taskCount = taskCount;
+        }
 }
@@ -0,0 +1,89 @@
+package com.bartczak.todo;
+
+import android.content.Context;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// In-memory dictionary of the categories table. There are few categories and they only
+// change through add and delete, so the table is read once and then kept in step with
+// every write instead of being queried for each dialog and each task opened.
+public class CategoryRepository {
+
+    private static CategoryRepository instance;
+
+    private final DatabaseHandler db;
+    // By id, in the order the table returns them. Null until first used.
+    private Map<Integer, Category> categories;
+
+    public static synchronized CategoryRepository getInstance(Context context) {
+        if (instance == null) {
+            instance = new CategoryRepository(DatabaseHandler.getInstance(context));
+        }
+        return instance;
+    }
+
+    CategoryRepository(DatabaseHandler db) {
+        this.db = db;
+    }
+
+    // The returned category is shared with the cache and must not be modified.
+    public synchronized Category get(int id) {
+        return load().get(id);
+    }
+
+    public synchronized String getName(int id) {
+        Category category = load().get(id);
+        return category == null ? null : category.getName();
+    }
+
+    // Copies of every category with the number of its tasks, as counted by
+    // TaskRepository.getTaskCountsByCategory.
+    public synchronized List<Category> getAllWithTaskCounts(Map<Integer, Integer> counts) {
+        List<Category> result = new ArrayList<>();
+        for (Category category : load().values()) {
+            Category copy = new Category();
+            copy.setId(category.getId());
+            copy.setName(category.getName());
+            Integer count = counts.get(category.getId());
+            copy.setTaskCount(count == null ? 0 : count);
+            result.add(copy);
+        }
+        return result;
+    }
+
+    public synchronized void add(Category category) {
+        db.addCategory(category);
+        if (categories != null) {
+            Category cached = new Category();
+            cached.setId(category.getId());
+            cached.setName(category.getName());
+            categories.put(cached.getId(), cached);
+        }
+    }
+
+    // Tasks keep the id of a deleted category; lookups then simply find no name.
+    public synchronized void delete(int id) {
+        db.deleteCategory(id);
+        if (categories != null) {
+            categories.remove(id);
+        }
+    }
+
+    // For writes that bypass the repository, such as an import.
+    public synchronized void invalidate() {
+        categories = null;
+    }
+
+    private Map<Integer, Category> load() {
+        if (categories == null) {
+            categories = new LinkedHashMap<>();
+            for (Category category : db.getAllCategories()) {
+                categories.put(category.getId(), category);
+            }
+        }
+        return categories;
+    }
+}
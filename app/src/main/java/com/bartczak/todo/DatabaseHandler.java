@@ -3,189 +3,514 @@ package com.bartczak.todo;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.CancellationSignal;
 
+import java.time.DayOfWeek;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.temporal.TemporalAdjusters;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+
+import static com.bartczak.todo.TaskQuery.KEY_ATTACHMENT;
+import static com.bartczak.todo.TaskQuery.KEY_CATEGORY_ID_FK;
+import static com.bartczak.todo.TaskQuery.KEY_CATEGORY_NAME;
+import static com.bartczak.todo.TaskQuery.KEY_CREATED_AT;
+import static com.bartczak.todo.TaskQuery.KEY_DESCRIPTION;
+import static com.bartczak.todo.TaskQuery.KEY_DONE;
+import static com.bartczak.todo.TaskQuery.KEY_DONE_AT;
+import static com.bartczak.todo.TaskQuery.KEY_DUE_DATE;
+import static com.bartczak.todo.TaskQuery.KEY_ID;
+import static com.bartczak.todo.TaskQuery.KEY_NOTIFICATION_ENABLED;
+import static com.bartczak.todo.TaskQuery.KEY_NOTIFICATION_SCHEDULED;
+import static com.bartczak.todo.TaskQuery.KEY_TITLE;
+import static com.bartczak.todo.TaskQuery.TABLE_CATEGORIES;
+import static com.bartczak.todo.TaskQuery.TABLE_TASKS;
 
 public class DatabaseHandler extends SQLiteOpenHelper {
 
-    private static final int DATABASE_VERSION = 3;
+    private static final int DATABASE_VERSION = 9;
 
     private static final String DATABASE_NAME = "todo";
 
-    private static final String TABLE_TASKS = "tasks";
-    private static final String TABLE_CATEGORIES = "categories";
-
-    private static final String KEY_ID = "id";
-    private static final String KEY_TITLE = "title";
-    private static final String KEY_DESCRIPTION = "description";
-    private static final String KEY_ATTACHMENT = "attachment";
-    private static final String KEY_CREATED_AT = "created_at";
-    private static final String KEY_DUE_DATE = "due_date";
-    private static final String KEY_DONE_AT = "done_at";
-    private static final String KEY_DONE = "done";
-    private static final String KEY_NOTIFICATION_ENABLED = "notification_enabled";
-    private static final String KEY_NOTIFICATION_SCHEDULED = "notification_scheduled";
-    private static final String KEY_CATEGORY_ID_FK = "category_id";
+    private static final String TABLE_ATTACHMENTS = "attachments";
+    private static final String TABLE_STATS_DAILY = "task_stats_daily";
+    private static final String TABLE_STATS_CATEGORY = "task_stats_category";
 
     private static final String KEY_CATEGORY_ID = "id";
-    private static final String KEY_CATEGORY_NAME = "name";
 
-    public DatabaseHandler(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    private static final String KEY_ATTACHMENT_HASH = "hash";
+    private static final String KEY_ATTACHMENT_NAME = "name";
+    private static final String KEY_ATTACHMENT_SIZE = "size";
+    private static final String KEY_ATTACHMENT_MIME_TYPE = "mime_type";
+    private static final String KEY_ATTACHMENT_REF_COUNT = "ref_count";
+    private static final String KEY_ATTACHMENT_TOUCHED_AT = "touched_at";
+
+    private static final String KEY_STATS_DAY = "day";
+    private static final String KEY_STATS_CREATED = "created";
+    private static final String KEY_STATS_COMPLETED = "completed";
+    private static final String KEY_STATS_OPEN_DUE = "open_due";
+    private static final String KEY_STATS_CATEGORY_ID = "category_id";
+    private static final String KEY_STATS_TOTAL = "total";
+    private static final String KEY_STATS_OPEN = "open";
+
+    // SQLite's default limit on host parameters in a single statement.
+    private static final int MAX_BOUND_IDS = 999;
+
+    private static DatabaseHandler instance;
+
+    private final QueryInstrumentation instrumentation = new QueryInstrumentation();
+
+    private SQLiteStatement insertTaskStatement;
+    private SQLiteStatement updateTaskStatement;
+    private SQLiteStatement deleteTaskStatement;
+    private SQLiteStatement setDoneStatement;
+    private SQLiteStatement setCategoryStatement;
+    private SQLiteStatement setReminderPendingStatement;
+
+    public static synchronized DatabaseHandler getInstance(Context context) {
+        if (instance == null) {
+            instance = new DatabaseHandler(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    // Package-private so tests can open a database of their own.
+    DatabaseHandler(Context context) {
+        this(context, DATABASE_NAME);
+    }
+
+    // Under another file name, for tests that need two databases side by side.
+    DatabaseHandler(Context context, String name) {
+        super(context, name, null, DATABASE_VERSION);
+        setWriteAheadLoggingEnabled(true);
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
-        final String CREATE_TASKS_TABLE = "CREATE TABLE " + TABLE_TASKS + "("
-                + KEY_ID + " INTEGER PRIMARY KEY,"
-                + KEY_TITLE + " TEXT,"
-                + KEY_DESCRIPTION + " TEXT,"
-                + KEY_ATTACHMENT + " TEXT,"
-                + KEY_CREATED_AT + " TEXT,"
-                + KEY_DUE_DATE + " TEXT,"
-                + KEY_DONE_AT + " TEXT,"
-                + KEY_DONE + " BOOL,"
-                + KEY_NOTIFICATION_ENABLED + " BOOL,"
-                + KEY_NOTIFICATION_SCHEDULED + " BOOL,"
-                + KEY_CATEGORY_ID_FK + " INTEGER REFERENCES " + TABLE_CATEGORIES + "(" + KEY_CATEGORY_ID + ")"
-                + ")";
-        final String CREATE_CATEGORIES_TABLE = "CREATE TABLE " + TABLE_CATEGORIES + "("
-                + KEY_CATEGORY_ID + " INTEGER PRIMARY KEY,"
-                + KEY_CATEGORY_NAME + " TEXT"
-                + ")";
-
-        db.execSQL(CREATE_CATEGORIES_TABLE);
-        db.execSQL(CREATE_TASKS_TABLE);
+        DatabaseMigrations.createBaseline(db);
+        DatabaseMigrations.migrate(db, DatabaseMigrations.BASELINE_VERSION, DATABASE_VERSION);
     }
 
     @Override
-    public void onUpgrade(SQLiteDatabase db, int i, int i1) {
-        if (i1 > i) {
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < DatabaseMigrations.BASELINE_VERSION) {
             db.execSQL("DROP TABLE IF EXISTS " + TABLE_TASKS);
             onCreate(db);
+            return;
         }
+        DatabaseMigrations.migrate(db, oldVersion, newVersion);
     }
 
-    public void addTask(final Task task) {
+    // The compiled statements hold a reference to the database, which stays open until
+    // they are released as well.
+    @Override
+    public synchronized void close() {
+        for (SQLiteStatement statement : new SQLiteStatement[]{insertTaskStatement, updateTaskStatement,
+                deleteTaskStatement, setDoneStatement, setCategoryStatement, setReminderPendingStatement}) {
+            if (statement != null) {
+                statement.close();
+            }
+        }
+        insertTaskStatement = null;
+        updateTaskStatement = null;
+        deleteTaskStatement = null;
+        setDoneStatement = null;
+        setCategoryStatement = null;
+        setReminderPendingStatement = null;
+        super.close();
+    }
+
+    public OperationMetrics getMetrics() {
+        return instrumentation.getMetrics();
+    }
+
+    public synchronized void addTask(final Task task) {
+        long start = System.nanoTime();
+        insertTask(task);
+        instrumentation.record("addTask", start, 1);
+    }
+
+    public synchronized void addTasks(final List<Task> tasks) {
+        long start = System.nanoTime();
         SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransactionNonExclusive();
+        try {
+            for (Task task : tasks) {
+                insertTask(task);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        instrumentation.record("addTasks", start, tasks.size());
+    }
 
-        ContentValues values = new ContentValues();
-        values.put(KEY_TITLE, task.getTitle());
-        values.put(KEY_DESCRIPTION, task.getDescription());
-        values.put(KEY_ATTACHMENT, task.getAttachmentPath());
-        values.put(KEY_CREATED_AT, task.getCreatedAt().toString());
-        values.put(KEY_DUE_DATE, task.getDueDate().toString());
-        if (task.getDoneAt() != null) {
-            values.put(KEY_DONE_AT, task.getDoneAt().toString());
+    // The single-row statements below are recorded by the public methods that run them,
+    // so a batch counts as one operation.
+    private void insertTask(final Task task) {
+        if (insertTaskStatement == null) {
+            insertTaskStatement = getWritableDatabase().compileStatement("INSERT INTO " + TABLE_TASKS + "("
+                    + KEY_TITLE + ", " + KEY_DESCRIPTION + ", " + KEY_ATTACHMENT + ", "
+                    + KEY_CREATED_AT + ", " + KEY_DUE_DATE + ", " + KEY_DONE_AT + ", " + KEY_DONE + ", "
+                    + KEY_NOTIFICATION_ENABLED + ", " + KEY_NOTIFICATION_SCHEDULED + ", " + KEY_CATEGORY_ID_FK
+                    + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
         }
-        values.put(KEY_DONE, task.isDone());
-        values.put(KEY_NOTIFICATION_ENABLED, task.isNotificationEnabled());
-        values.put(KEY_NOTIFICATION_SCHEDULED, task.isNotificationScheduled());
-        values.put(KEY_CATEGORY_ID_FK, task.getCategoryId());
 
-        db.insert(TABLE_TASKS, null, values);
-        db.close();
+        bindTask(insertTaskStatement, task);
+        task.setId((int) insertTaskStatement.executeInsert());
+    }
+
+    public List<Task> getTasks(TaskFilter filter) {
+        return getTasks(filter, null);
     }
 
-    public List<Task> getAllTasks(boolean sortAscending, int categoryId) {
+    public List<Task> getTasks(TaskFilter filter, CancellationSignal cancellationSignal) {
+        TaskQuery query = TaskQuery.ranked(filter);
+        return queryTasks("getTasks", query.getSql(), query.getArgs(), cancellationSignal);
+    }
+
+    public TaskPage getTasksPage(TaskFilter filter, TaskPageKey after, int pageSize) {
+        TaskQuery query = TaskQuery.page(filter, after, pageSize);
+        return TaskPage.of(queryTasks("getTasksPage", query.getSql(), query.getArgs()), pageSize);
+    }
+
+    public Task getTask(final int id) {
+        List<Task> tasks = queryTasks("getTask", "SELECT " + TaskQuery.TASK_COLUMNS + " FROM " + TaskQuery.TASKS_WITH_CATEGORY
+                + " WHERE " + TABLE_TASKS + "." + KEY_ID + " = ?",
+                new String[]{String.valueOf(id)});
+        return tasks.isEmpty() ? null : tasks.get(0);
+    }
+
+    public List<Task> getTaskSummaries(TaskFilter filter) {
+        TaskQuery query = TaskQuery.page(filter, null, 0);
+        return queryTasks("getTaskSummaries", query.getSql(), query.getArgs());
+    }
+
+    public List<Task> getAllTaskSummaries() {
+        return queryTasks("getAllTaskSummaries", "SELECT " + TaskQuery.SUMMARY_COLUMNS + " FROM "
+                + TaskQuery.TASKS_WITH_CATEGORY, null);
+    }
+
+    public List<Task> getTasksByIds(final List<Integer> ids) {
+        return queryTasksByIds("getTasksByIds", ids, TaskQuery.TASK_COLUMNS);
+    }
+
+    public List<Task> getTaskSummariesByIds(final List<Integer> ids) {
+        return queryTasksByIds("getTaskSummariesByIds", ids, TaskQuery.SUMMARY_COLUMNS);
+    }
+
+    // Each chunk of ids is recorded as a call of its own.
+    private List<Task> queryTasksByIds(final String operation, final List<Integer> ids, final String columns) {
         List<Task> tasks = new ArrayList<>();
-        String selectQuery;
-        if (categoryId != -1) {
-            selectQuery = "SELECT * FROM " + TABLE_TASKS + " WHERE " + KEY_CATEGORY_ID_FK + " = " + categoryId
-                    + " ORDER BY " + KEY_DUE_DATE + " " + (sortAscending ? "ASC" : "DESC");
-        } else {
-            selectQuery = "SELECT * FROM " + TABLE_TASKS
-                    + " ORDER BY " + KEY_DUE_DATE + " " + (sortAscending ? "ASC" : "DESC");
+        for (int start = 0; start < ids.size(); start += MAX_BOUND_IDS) {
+            List<Integer> chunk = ids.subList(start, Math.min(ids.size(), start + MAX_BOUND_IDS));
+            String[] args = new String[chunk.size()];
+            StringBuilder placeholders = new StringBuilder();
+            for (int i = 0; i < chunk.size(); i++) {
+                args[i] = String.valueOf(chunk.get(i));
+                placeholders.append(i == 0 ? "?" : ", ?");
+            }
+            tasks.addAll(queryTasks(operation, "SELECT " + columns + " FROM " + TaskQuery.TASKS_WITH_CATEGORY
+                    + " WHERE " + TABLE_TASKS + "." + KEY_ID + " IN (" + placeholders + ")", args));
         }
+        return tasks;
+    }
 
-        SQLiteDatabase db = this.getWritableDatabase();
-        Cursor cursor = db.rawQuery(selectQuery, null);
+    public long getTaskCount() {
+        long start = System.nanoTime();
+        long count = DatabaseUtils.queryNumEntries(getReadableDatabase(), TABLE_TASKS);
+        instrumentation.record("getTaskCount", start, 1);
+        return count;
+    }
 
-        if (cursor.moveToFirst()) {
-            do {
-                tasks.add(createTaskFromCursor(cursor));
-            } while (cursor.moveToNext());
+    // Number of tasks per category id, -1 counting the tasks without a category. Read
+    // from the counters the triggers of migration 9 keep, one row per category.
+    public Map<Integer, Integer> getTaskCountsByCategory() {
+        Map<Integer, Integer> counts = new HashMap<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = instrumentation.query(db, "getTaskCountsByCategory", "SELECT " + KEY_STATS_CATEGORY_ID
+                + ", " + KEY_STATS_TOTAL + " FROM " + TABLE_STATS_CATEGORY + " WHERE " + KEY_STATS_TOTAL + " > 0", null);
+        while (cursor.moveToNext()) {
+            counts.put(cursor.getInt(0), cursor.getInt(1));
         }
+        cursor.close();
+        return counts;
+    }
 
+    // Reads the counters of migration 9 instead of the tasks, so the cost does not
+    // depend on how many tasks there are. Overdue sums the earlier days that still have
+    // open tasks and adds the open tasks due earlier today, found through the
+    // (done, due_date) index.
+    public TaskStatistics getTaskStatistics(LocalDateTime now, DayOfWeek firstDayOfWeek) {
+        LocalDate today = now.toLocalDate();
+        long todayEpochDay = today.toEpochDay();
+        long weekStart = today.with(TemporalAdjusters.previousOrSame(firstDayOfWeek)).toEpochDay();
+        long firstDay = Math.min(weekStart, todayEpochDay - TaskStatistics.DAYS + 1);
+        TaskStatistics statistics = new TaskStatistics(today);
+        SQLiteDatabase db = this.getReadableDatabase();
+
+        Cursor cursor = instrumentation.query(db, "getTaskStatistics.overdue", "SELECT "
+                + "(SELECT IFNULL(SUM(" + KEY_STATS_OPEN_DUE + "), 0) FROM " + TABLE_STATS_DAILY + " WHERE "
+                + KEY_STATS_OPEN_DUE + " > 0 AND " + KEY_STATS_DAY + " < ?), "
+                + "(SELECT COUNT(*) FROM " + TABLE_TASKS + " WHERE " + KEY_DONE + " = 0 AND "
+                + KEY_DUE_DATE + " >= ? AND " + KEY_DUE_DATE + " < ?)",
+                new String[]{String.valueOf(todayEpochDay),
+                        String.valueOf(TaskDateCodec.encode(today.atStartOfDay())),
+                        String.valueOf(TaskDateCodec.encode(now))});
+        cursor.moveToFirst();
+        int overdueBeforeToday = cursor.getInt(0);
+        int overdueToday = cursor.getInt(1);
+        cursor.close();
+        statistics.setOverdue(overdueBeforeToday + overdueToday);
+
+        cursor = instrumentation.query(db, "getTaskStatistics.daily", "SELECT " + KEY_STATS_DAY + ", "
+                + KEY_STATS_CREATED + ", " + KEY_STATS_COMPLETED + ", " + KEY_STATS_OPEN_DUE + " FROM "
+                + TABLE_STATS_DAILY + " WHERE " + KEY_STATS_DAY + " BETWEEN ? AND ?",
+                new String[]{String.valueOf(firstDay), String.valueOf(todayEpochDay)});
+        int createdThisWeek = 0;
+        int completedThisWeek = 0;
+        while (cursor.moveToNext()) {
+            long day = cursor.getLong(0);
+            if (day >= weekStart) {
+                createdThisWeek += cursor.getInt(1);
+                completedThisWeek += cursor.getInt(2);
+            }
+            if (day > todayEpochDay - TaskStatistics.DAYS) {
+                statistics.getCompletedByDay()[(int) (day - todayEpochDay) + TaskStatistics.DAYS - 1] = cursor.getInt(2);
+            }
+            if (day == todayEpochDay) {
+                statistics.setDueToday(cursor.getInt(3) - overdueToday);
+            }
+        }
+        cursor.close();
+        statistics.setCreatedThisWeek(createdThisWeek);
+        statistics.setCompletedThisWeek(completedThisWeek);
+
+        // Tasks without a category and those of deleted categories end up together
+        // under a null name.
+        cursor = instrumentation.query(db, "getTaskStatistics.categories", "SELECT " + TABLE_CATEGORIES + "."
+                + KEY_CATEGORY_NAME + ", SUM(" + KEY_STATS_TOTAL + "), SUM(" + KEY_STATS_OPEN + ") FROM "
+                + TABLE_STATS_CATEGORY + " LEFT JOIN " + TABLE_CATEGORIES + " ON " + TABLE_CATEGORIES + "."
+                + KEY_CATEGORY_ID + " = " + TABLE_STATS_CATEGORY + "." + KEY_STATS_CATEGORY_ID + " WHERE "
+                + KEY_STATS_TOTAL + " > 0 GROUP BY " + TABLE_CATEGORIES + "." + KEY_CATEGORY_ID
+                + " ORDER BY 2 DESC", null);
+        while (cursor.moveToNext()) {
+            statistics.getCategories().add(new TaskStatistics.CategoryCount(
+                    cursor.isNull(0) ? null : cursor.getString(0), cursor.getInt(1), cursor.getInt(2)));
+        }
         cursor.close();
-        db.close();
+        return statistics;
+    }
 
-        return tasks;
+    public synchronized void deleteTask(final int id) {
+        long start = System.nanoTime();
+        deleteTaskRow(id);
+        instrumentation.record("deleteTask", start, 1);
     }
 
-    public List<Task> getTasksByTitle(String query, boolean sortAscending, int categoryId) {
-        List<Task> tasks = new ArrayList<>();
-        String selectQuery;
-        if (categoryId != -1) {
-            selectQuery = "SELECT * FROM " + TABLE_TASKS + " WHERE " + KEY_CATEGORY_ID_FK + " = " + categoryId
-                    + " AND " + KEY_TITLE + " LIKE '%" + query + "%' ORDER BY " + KEY_DUE_DATE + " " + (sortAscending ? "ASC" : "DESC");
-        } else {
-            selectQuery = "SELECT * FROM " + TABLE_TASKS
-                    + " WHERE " + KEY_TITLE + " LIKE '%" + query + "%' ORDER BY " + KEY_DUE_DATE + " " + (sortAscending ? "ASC" : "DESC");
+    public synchronized void deleteTasks(final List<Integer> ids) {
+        long start = System.nanoTime();
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransactionNonExclusive();
+        try {
+            for (int id : ids) {
+                deleteTaskRow(id);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
         }
+        instrumentation.record("deleteTasks", start, ids.size());
+    }
+
+    private void deleteTaskRow(final int id) {
+        if (deleteTaskStatement == null) {
+            deleteTaskStatement = getWritableDatabase().compileStatement("DELETE FROM " + TABLE_TASKS
+                    + " WHERE " + KEY_ID + " = ?");
+        }
+
+        deleteTaskStatement.bindLong(1, id);
+        deleteTaskStatement.executeUpdateDelete();
+    }
 
+    public synchronized void updateTask(final Task task) {
+        long start = System.nanoTime();
+        updateTaskRow(task);
+        instrumentation.record("updateTask", start, 1);
+    }
+
+    public synchronized void updateTasks(final List<Task> tasks) {
+        long start = System.nanoTime();
         SQLiteDatabase db = this.getWritableDatabase();
-        Cursor cursor = db.rawQuery(selectQuery, null);
+        db.beginTransactionNonExclusive();
+        try {
+            for (Task task : tasks) {
+                updateTaskRow(task);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        instrumentation.record("updateTasks", start, tasks.size());
+    }
 
-        if (cursor.moveToFirst()) {
-            do {
-                tasks.add(createTaskFromCursor(cursor));
-            } while (cursor.moveToNext());
+    private void updateTaskRow(final Task task) {
+        if (updateTaskStatement == null) {
+            updateTaskStatement = getWritableDatabase().compileStatement("UPDATE " + TABLE_TASKS + " SET "
+                    + KEY_TITLE + " = ?, " + KEY_DESCRIPTION + " = ?, " + KEY_ATTACHMENT + " = ?, "
+                    + KEY_CREATED_AT + " = ?, " + KEY_DUE_DATE + " = ?, " + KEY_DONE_AT + " = ?, " + KEY_DONE + " = ?, "
+                    + KEY_NOTIFICATION_ENABLED + " = ?, " + KEY_NOTIFICATION_SCHEDULED + " = ?, " + KEY_CATEGORY_ID_FK + " = ?"
+                    + " WHERE " + KEY_ID + " = ?");
         }
 
-        cursor.close();
-        db.close();
+        bindTask(updateTaskStatement, task);
+        updateTaskStatement.bindLong(11, task.getId());
+        updateTaskStatement.executeUpdateDelete();
+    }
 
-        return tasks;
+    // Completing a task also clears its scheduled-notification flag, since
+    // reminders for completed tasks are cancelled.
+    public synchronized void setDone(final List<Integer> ids, final boolean done) {
+        if (setDoneStatement == null) {
+            setDoneStatement = getWritableDatabase().compileStatement("UPDATE " + TABLE_TASKS + " SET "
+                    + KEY_DONE + " = ?, " + KEY_DONE_AT + " = ?, "
+                    + KEY_NOTIFICATION_SCHEDULED + " = " + KEY_NOTIFICATION_SCHEDULED + " AND NOT ?"
+                    + " WHERE " + KEY_ID + " = ?");
+        }
+
+        long start = System.nanoTime();
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransactionNonExclusive();
+        try {
+            long doneAt = TaskDateCodec.encode(LocalDateTime.now());
+            for (int id : ids) {
+                setDoneStatement.clearBindings();
+                setDoneStatement.bindLong(1, done ? 1 : 0);
+                if (done) {
+                    setDoneStatement.bindLong(2, doneAt);
+                }
+                setDoneStatement.bindLong(3, done ? 1 : 0);
+                setDoneStatement.bindLong(4, id);
+                setDoneStatement.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        instrumentation.record("setDone", start, ids.size());
     }
 
-    public void deleteTask(final int id) {
+    public synchronized void setCategory(final List<Integer> ids, final int categoryId) {
+        if (setCategoryStatement == null) {
+            setCategoryStatement = getWritableDatabase().compileStatement("UPDATE " + TABLE_TASKS + " SET "
+                    + KEY_CATEGORY_ID_FK + " = ? WHERE " + KEY_ID + " = ?");
+        }
+
+        long start = System.nanoTime();
         SQLiteDatabase db = this.getWritableDatabase();
-        db.delete(TABLE_TASKS, KEY_ID + " = ?", new String[] { String.valueOf(id) });
-        db.close();
+        db.beginTransactionNonExclusive();
+        try {
+            for (int id : ids) {
+                setCategoryStatement.bindLong(1, categoryId);
+                setCategoryStatement.bindLong(2, id);
+                setCategoryStatement.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        instrumentation.record("setCategory", start, ids.size());
     }
 
-    public void updateTask(final Task task) {
+    public synchronized void setReminderPending(final List<Integer> ids, final boolean pending) {
+        if (setReminderPendingStatement == null) {
+            setReminderPendingStatement = getWritableDatabase().compileStatement("UPDATE " + TABLE_TASKS + " SET "
+                    + KEY_NOTIFICATION_SCHEDULED + " = ? WHERE " + KEY_ID + " = ?");
+        }
+
+        long start = System.nanoTime();
         SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransactionNonExclusive();
+        try {
+            for (int id : ids) {
+                setReminderPendingStatement.bindLong(1, pending ? 1 : 0);
+                setReminderPendingStatement.bindLong(2, id);
+                setReminderPendingStatement.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        instrumentation.record("setReminderPending", start, ids.size());
+    }
 
-        ContentValues values = new ContentValues();
-        values.put(KEY_TITLE, task.getTitle());
-        values.put(KEY_DESCRIPTION, task.getDescription());
-        values.put(KEY_ATTACHMENT, task.getAttachmentPath());
-        values.put(KEY_CREATED_AT, task.getCreatedAt().toString());
-        values.put(KEY_DUE_DATE, task.getDueDate().toString());
-        if (task.getDoneAt() != null) {
-            values.put(KEY_DONE_AT, task.getDoneAt().toString());
+    // Complete tasks in id order, the next limit after afterId, so every task can be
+    // read page by page without holding them all. Category names are not joined in.
+    public List<Task> getTasksAfterId(final int afterId, final int limit) {
+        return queryTasks("getTasksAfterId", "SELECT * FROM " + TABLE_TASKS + " WHERE " + KEY_ID + " > ? ORDER BY "
+                + KEY_ID + " LIMIT " + limit, new String[]{String.valueOf(afterId)});
+    }
+
+    // Pending reminders of tasks due at or before the given time, soonest first.
+    public List<Task> getPendingReminders(LocalDateTime dueBefore) {
+        return queryTasks("getPendingReminders", "SELECT * FROM " + TABLE_TASKS + " WHERE "
+                + KEY_NOTIFICATION_SCHEDULED + " = 1 AND "
+                + KEY_DUE_DATE + " <= ? ORDER BY " + KEY_DUE_DATE,
+                new String[]{String.valueOf(TaskDateCodec.encode(dueBefore))});
+    }
+
+    public LocalDateTime getNextReminderDueDate() {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = instrumentation.query(db, "getNextReminderDueDate", "SELECT MIN(" + KEY_DUE_DATE + ") FROM "
+                + TABLE_TASKS + " WHERE " + KEY_NOTIFICATION_SCHEDULED + " = 1", null);
+        LocalDateTime dueDate = null;
+        if (cursor.moveToFirst() && !cursor.isNull(0)) {
+            dueDate = TaskDateCodec.decode(cursor.getLong(0));
         }
-        values.put(KEY_DONE, task.isDone());
-        values.put(KEY_NOTIFICATION_ENABLED, task.isNotificationEnabled());
-        values.put(KEY_NOTIFICATION_SCHEDULED, task.isNotificationScheduled());
-        values.put(KEY_CATEGORY_ID_FK, task.getCategoryId());
+        cursor.close();
+        return dueDate;
+    }
 
-        db.update(TABLE_TASKS, values, KEY_ID + " = ?", new String[] { String.valueOf(task.getId()) });
-        db.close();
+    // Open tasks with reminders on that are not pending, although they are due after
+    // the given time. A shorter lead time or a clock set back leaves these behind.
+    public List<Integer> getMissedReminderIds(LocalDateTime dueAfter) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = instrumentation.query(db, "getMissedReminderIds", "SELECT " + KEY_ID + " FROM " + TABLE_TASKS
+                + " WHERE " + KEY_NOTIFICATION_ENABLED + " = 1 AND " + KEY_DONE + " = 0 AND "
+                + KEY_NOTIFICATION_SCHEDULED + " = 0 AND " + KEY_DUE_DATE + " > ?",
+                new String[]{String.valueOf(TaskDateCodec.encode(dueAfter))});
+        List<Integer> ids = new ArrayList<>();
+        while (cursor.moveToNext()) {
+            ids.add(cursor.getInt(0));
+        }
+        cursor.close();
+        return ids;
     }
 
-    public void addCategory(final Category category) {
+    public synchronized void addCategory(final Category category) {
+        long start = System.nanoTime();
         SQLiteDatabase db = this.getWritableDatabase();
 
         ContentValues values = new ContentValues();
         values.put(KEY_CATEGORY_NAME, category.getName());
 
-        db.insert(TABLE_CATEGORIES, null, values);
-        db.close();
+        category.setId((int) db.insert(TABLE_CATEGORIES, null, values));
+        instrumentation.record("addCategory", start, 1);
     }
 
     public List<Category> getAllCategories() {
         List<Category> categories = new ArrayList<>();
         final String SELECT_QUERY = "SELECT * FROM " + TABLE_CATEGORIES;
 
-        SQLiteDatabase db = this.getWritableDatabase();
-        Cursor cursor = db.rawQuery(SELECT_QUERY, null);
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = instrumentation.query(db, "getAllCategories", SELECT_QUERY, null);
 
         if (cursor.moveToFirst()) {
             do {
@@ -194,49 +519,80 @@ public class DatabaseHandler extends SQLiteOpenHelper {
         }
 
         cursor.close();
-        db.close();
 
         return categories;
     }
 
     public Category getCategoryById(final int id) {
-        final String SELECT_QUERY = "SELECT * FROM " + TABLE_CATEGORIES + " WHERE " + KEY_CATEGORY_ID + " = " + id;
+        final String SELECT_QUERY = "SELECT * FROM " + TABLE_CATEGORIES + " WHERE " + KEY_CATEGORY_ID + " = ?";
 
-        SQLiteDatabase db = this.getWritableDatabase();
-        Cursor cursor = db.rawQuery(SELECT_QUERY, null);
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = instrumentation.query(db, "getCategoryById", SELECT_QUERY,
+                new String[]{String.valueOf(id)});
 
+        Category category = null;
         if (cursor.moveToFirst()) {
-            return createCategoryFromCursor(cursor);
+            category = createCategoryFromCursor(cursor);
         }
 
         cursor.close();
-        db.close();
 
-        return null;
+        return category;
     }
 
-    public void deleteCategory(int id) {
+    public synchronized void deleteCategory(int id) {
+        long start = System.nanoTime();
         SQLiteDatabase db = this.getWritableDatabase();
-        db.delete(TABLE_CATEGORIES, KEY_CATEGORY_ID + " = ?", new String[] { String.valueOf(id) });
-        db.close();
+        int deleted = db.delete(TABLE_CATEGORIES, KEY_CATEGORY_ID + " = ?", new String[] { String.valueOf(id) });
+        instrumentation.record("deleteCategory", start, deleted);
     }
 
-    private Task createTaskFromCursor(Cursor cursor) {
-        Task task = new Task();
-        task.setId(cursor.getInt(0));
-        task.setTitle(cursor.getString(1));
-        task.setDescription(cursor.getString(2));
-        task.setAttachmentPath(cursor.getString(3));
-        task.setCreatedAt(LocalDateTime.parse(cursor.getString(4)));
-        task.setDueDate(LocalDateTime.parse(cursor.getString(5)));
-        if (cursor.getString(6) != null) {
-            task.setDoneAt(LocalDateTime.parse(cursor.getString(6)));
+    private void bindTask(SQLiteStatement statement, Task task) {
+        statement.clearBindings();
+        bindString(statement, 1, task.getTitle());
+        bindString(statement, 2, task.getDescription());
+        bindString(statement, 3, task.getAttachment());
+        statement.bindLong(4, TaskDateCodec.encode(task.getCreatedAt()));
+        statement.bindLong(5, TaskDateCodec.encode(task.getDueDate()));
+        if (task.getDoneAt() != null) {
+            statement.bindLong(6, TaskDateCodec.encode(task.getDoneAt()));
         }
-        task.setDone(cursor.getInt(7) == 1);
-        task.setNotificationEnabled(cursor.getInt(8) == 1);
-        task.setNotificationScheduled(cursor.getInt(9) == 1);
-        task.setCategoryId(cursor.getInt(10));
-        return task;
+        bindBoolean(statement, 7, task.isDone());
+        bindBoolean(statement, 8, task.isNotificationEnabled());
+        bindBoolean(statement, 9, task.isNotificationScheduled());
+        statement.bindLong(10, task.getCategoryId());
+    }
+
+    private void bindString(SQLiteStatement statement, int index, String value) {
+        if (value != null) {
+            statement.bindString(index, value);
+        }
+    }
+
+    private void bindBoolean(SQLiteStatement statement, int index, boolean value) {
+        statement.bindLong(index, value ? 1 : 0);
+    }
+
+    private List<Task> queryTasks(String operation, String selectQuery, String[] args) {
+        return queryTasks(operation, selectQuery, args, null);
+    }
+
+    private List<Task> queryTasks(String operation, String selectQuery, String[] args, CancellationSignal cancellationSignal) {
+        List<Task> tasks = new ArrayList<>();
+
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = instrumentation.query(db, operation, selectQuery, args, cancellationSignal);
+
+        if (cursor.moveToFirst()) {
+            TaskCursorMapper mapper = new TaskCursorMapper(cursor);
+            do {
+                tasks.add(mapper.read());
+            } while (cursor.moveToNext());
+        }
+
+        cursor.close();
+
+        return tasks;
     }
 
     private Category createCategoryFromCursor(Cursor cursor) {
@@ -246,4 +602,120 @@ public class DatabaseHandler extends SQLiteOpenHelper {
 
         return category;
     }
+
+    // Registers a stored blob, or marks an existing one as just used so that it is not
+    // collected before the task referencing it is saved.
+    public synchronized void addAttachment(final Attachment attachment, final long now) {
+        long start = System.nanoTime();
+        SQLiteDatabase db = this.getWritableDatabase();
+        ContentValues touched = new ContentValues();
+        touched.put(KEY_ATTACHMENT_TOUCHED_AT, now);
+        if (db.update(TABLE_ATTACHMENTS, touched, KEY_ATTACHMENT_HASH + " = ?", new String[]{attachment.getHash()}) > 0) {
+            instrumentation.record("addAttachment", start, 1);
+            return;
+        }
+
+        ContentValues values = new ContentValues();
+        values.put(KEY_ATTACHMENT_HASH, attachment.getHash());
+        values.put(KEY_ATTACHMENT_NAME, attachment.getName());
+        values.put(KEY_ATTACHMENT_SIZE, attachment.getSize());
+        values.put(KEY_ATTACHMENT_MIME_TYPE, attachment.getMimeType());
+        values.put(KEY_ATTACHMENT_TOUCHED_AT, now);
+        db.insert(TABLE_ATTACHMENTS, null, values);
+        instrumentation.record("addAttachment", start, 1);
+    }
+
+    public Attachment getAttachment(final String hash) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = instrumentation.query(db, "getAttachment", "SELECT " + KEY_ATTACHMENT_HASH + ", "
+                + KEY_ATTACHMENT_NAME + ", " + KEY_ATTACHMENT_SIZE + ", " + KEY_ATTACHMENT_MIME_TYPE + " FROM "
+                + TABLE_ATTACHMENTS + " WHERE " + KEY_ATTACHMENT_HASH + " = ?", new String[]{hash});
+        Attachment attachment = null;
+        if (cursor.moveToFirst()) {
+            attachment = createAttachmentFromCursor(cursor);
+        }
+        cursor.close();
+        return attachment;
+    }
+
+    // Attachments some task references, in hash order, the next limit after afterHash
+    // (null to start).
+    public List<Attachment> getReferencedAttachmentsAfter(final String afterHash, final int limit) {
+        List<Attachment> attachments = new ArrayList<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = instrumentation.query(db, "getReferencedAttachmentsAfter", "SELECT " + KEY_ATTACHMENT_HASH
+                + ", " + KEY_ATTACHMENT_NAME + ", " + KEY_ATTACHMENT_SIZE + ", " + KEY_ATTACHMENT_MIME_TYPE + " FROM "
+                + TABLE_ATTACHMENTS + " WHERE " + KEY_ATTACHMENT_REF_COUNT + " > 0 AND " + KEY_ATTACHMENT_HASH + " > ?"
+                + " ORDER BY " + KEY_ATTACHMENT_HASH + " LIMIT " + limit,
+                new String[]{afterHash == null ? "" : afterHash});
+        while (cursor.moveToNext()) {
+            attachments.add(createAttachmentFromCursor(cursor));
+        }
+        cursor.close();
+        return attachments;
+    }
+
+    private Attachment createAttachmentFromCursor(Cursor cursor) {
+        Attachment attachment = new Attachment();
+        attachment.setHash(cursor.getString(0));
+        attachment.setName(cursor.getString(1));
+        attachment.setSize(cursor.getLong(2));
+        attachment.setMimeType(cursor.getString(3));
+        return attachment;
+    }
+
+    public List<String> getAttachmentHashes() {
+        return queryStrings("getAttachmentHashes", "SELECT " + KEY_ATTACHMENT_HASH + " FROM " + TABLE_ATTACHMENTS, null);
+    }
+
+    public List<String> getUnreferencedAttachments(final long touchedBefore) {
+        return queryStrings("getUnreferencedAttachments", "SELECT " + KEY_ATTACHMENT_HASH + " FROM "
+                + TABLE_ATTACHMENTS + " WHERE "
+                + KEY_ATTACHMENT_REF_COUNT + " <= 0 AND " + KEY_ATTACHMENT_TOUCHED_AT + " < ?",
+                new String[]{String.valueOf(touchedBefore)});
+    }
+
+    // Only removes the row if nothing started referencing it in the meantime.
+    public synchronized boolean deleteUnreferencedAttachment(final String hash) {
+        long start = System.nanoTime();
+        SQLiteDatabase db = this.getWritableDatabase();
+        int deleted = db.delete(TABLE_ATTACHMENTS, KEY_ATTACHMENT_HASH + " = ? AND " + KEY_ATTACHMENT_REF_COUNT + " <= 0",
+                new String[]{hash});
+        instrumentation.record("deleteUnreferencedAttachment", start, deleted);
+        return deleted > 0;
+    }
+
+    // Tasks whose attachment column still holds a path from before the store existed.
+    public Map<Integer, String> getLegacyAttachments() {
+        Map<Integer, String> attachments = new HashMap<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = instrumentation.query(db, "getLegacyAttachments", "SELECT " + KEY_ID + ", " + KEY_ATTACHMENT
+                + " FROM " + TABLE_TASKS + " WHERE " + KEY_ATTACHMENT + " IS NOT NULL AND " + KEY_ATTACHMENT + " NOT IN (SELECT "
+                + KEY_ATTACHMENT_HASH + " FROM " + TABLE_ATTACHMENTS + ")", null);
+        while (cursor.moveToNext()) {
+            attachments.put(cursor.getInt(0), cursor.getString(1));
+        }
+        cursor.close();
+        return attachments;
+    }
+
+    public synchronized void setTaskAttachment(final int id, final String attachment) {
+        long start = System.nanoTime();
+        SQLiteDatabase db = this.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(KEY_ATTACHMENT, attachment);
+        int updated = db.update(TABLE_TASKS, values, KEY_ID + " = ?", new String[]{String.valueOf(id)});
+        instrumentation.record("setTaskAttachment", start, updated);
+    }
+
+    private List<String> queryStrings(String operation, String selectQuery, String[] args) {
+        List<String> values = new ArrayList<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = instrumentation.query(db, operation, selectQuery, args);
+        while (cursor.moveToNext()) {
+            values.add(cursor.getString(0));
+        }
+        cursor.close();
+        return values;
+    }
 }
@@ -0,0 +1,43 @@
+package com.bartczak.todo;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import android.os.Bundle;
+import android.widget.Button;
+import android.widget.TextView;
+
+// Debug screen showing the metrics DatabaseHandler collected since the process started
+// or the last reset.
+public class DatabaseMetricsActivity extends AppCompatActivity {
+
+    private OperationMetrics metrics;
+    private TextView metricsText;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_database_metrics);
+
+        metrics = DatabaseHandler.getInstance(this).getMetrics();
+        metricsText = findViewById(R.id.metrics_text);
+        Button refresh = findViewById(R.id.refresh_metrics_button);
+        Button reset = findViewById(R.id.reset_metrics_button);
+
+        refresh.setOnClickListener(v -> showMetrics());
+        reset.setOnClickListener(v -> {
+            metrics.reset();
+            showMetrics();
+        });
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        showMetrics();
+    }
+
+    private void showMetrics() {
+        String dump = metrics.dump();
+        metricsText.setText(dump.isEmpty() ? getString(R.string.no_database_operations) : dump);
+    }
+}
@@ -0,0 +1,248 @@
+package com.bartczak.todo;
+
+import android.database.sqlite.SQLiteDatabase;
+
+final class DatabaseMigrations {
+
+    static final int BASELINE_VERSION = 3;
+
+    private DatabaseMigrations() {
+    }
+
+    static void createBaseline(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS categories("
+                + "id INTEGER PRIMARY KEY,"
+                + "name TEXT"
+                + ")");
+        db.execSQL("CREATE TABLE tasks("
+                + "id INTEGER PRIMARY KEY,"
+                + "title TEXT,"
+                + "description TEXT,"
+                + "attachment TEXT,"
+                + "created_at TEXT,"
+                + "due_date TEXT,"
+                + "done_at TEXT,"
+                + "done BOOL,"
+                + "notification_enabled BOOL,"
+                + "notification_scheduled BOOL,"
+                + "category_id INTEGER REFERENCES categories(id)"
+                + ")");
+    }
+
+    static void migrate(SQLiteDatabase db, int fromVersion, int toVersion) {
+        for (int version = fromVersion + 1; version <= toVersion; version++) {
+            switch (version) {
+                case 4:
+                    migrateTo4(db);
+                    break;
+                case 5:
+                    migrateTo5(db);
+                    break;
+                case 6:
+                    migrateTo6(db);
+                    break;
+                case 7:
+                    migrateTo7(db);
+                    break;
+                case 8:
+                    migrateTo8(db);
+                    break;
+                case 9:
+                    migrateTo9(db);
+                    break;
+                default:
+                    throw new IllegalStateException("No migration to database version " + version);
+            }
+        }
+    }
+
+    private static void migrateTo4(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_tasks_due_date ON tasks(due_date)");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_tasks_category_due_date ON tasks(category_id, due_date)");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_tasks_done_due_date ON tasks(done, due_date)");
+    }
+
+    private static void migrateTo5(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE tasks_new("
+                + "id INTEGER PRIMARY KEY,"
+                + "title TEXT,"
+                + "description TEXT,"
+                + "attachment TEXT,"
+                + "created_at INTEGER,"
+                + "due_date INTEGER,"
+                + "done_at INTEGER,"
+                + "done BOOL,"
+                + "notification_enabled BOOL,"
+                + "notification_scheduled BOOL,"
+                + "category_id INTEGER REFERENCES categories(id)"
+                + ")");
+        db.execSQL("INSERT INTO tasks_new SELECT id, title, description, attachment, "
+                + isoToEpochMillis("created_at") + ", "
+                + isoToEpochMillis("due_date") + ", "
+                + isoToEpochMillis("done_at") + ", "
+                + "done, notification_enabled, notification_scheduled, category_id FROM tasks");
+        db.execSQL("DROP TABLE tasks");
+        db.execSQL("ALTER TABLE tasks_new RENAME TO tasks");
+        migrateTo4(db);
+    }
+
+    private static void migrateTo6(SQLiteDatabase db) {
+        db.execSQL("CREATE VIRTUAL TABLE tasks_fts USING fts4(content=\"tasks\", title, description, tokenize=unicode61)");
+        db.execSQL("CREATE TRIGGER tasks_fts_before_update BEFORE UPDATE OF title, description ON tasks BEGIN "
+                + "DELETE FROM tasks_fts WHERE docid = old.id; END");
+        db.execSQL("CREATE TRIGGER tasks_fts_before_delete BEFORE DELETE ON tasks BEGIN "
+                + "DELETE FROM tasks_fts WHERE docid = old.id; END");
+        db.execSQL("CREATE TRIGGER tasks_fts_after_update AFTER UPDATE OF title, description ON tasks BEGIN "
+                + "INSERT INTO tasks_fts(docid, title, description) VALUES (new.id, new.title, new.description); END");
+        db.execSQL("CREATE TRIGGER tasks_fts_after_insert AFTER INSERT ON tasks BEGIN "
+                + "INSERT INTO tasks_fts(docid, title, description) VALUES (new.id, new.title, new.description); END");
+        db.execSQL("INSERT INTO tasks_fts(tasks_fts) VALUES ('rebuild')");
+    }
+
+    private static String isoToEpochMillis(String column) {
+        return "CAST(strftime('%s', " + column + ") AS INTEGER) * 1000"
+                + " + CAST(substr(strftime('%f', " + column + "), 4) AS INTEGER)";
+    }
+
+    // notification_scheduled now means "reminder pending" and is cleared once the
+    // reminder fires, ReminderScheduler finds the next one through the partial index.
+    // Before this version the flag was never cleared, so it is reset for tasks that can
+    // no longer be reminded about. Dates are local wall-clock millis, see TaskDateCodec.
+    private static void migrateTo7(SQLiteDatabase db) {
+        db.execSQL("UPDATE tasks SET notification_scheduled = 0 WHERE done = 1 OR notification_enabled = 0 "
+                + "OR due_date <= strftime('%s', 'now', 'localtime') * 1000");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_tasks_reminders ON tasks(due_date) WHERE notification_scheduled = 1");
+    }
+
+    // Attachment blobs are stored once per content hash and tasks.attachment holds that
+    // hash. ref_count is kept by triggers on tasks, touched_at (real UTC millis, unlike
+    // task dates) records when it last changed so AttachmentStore only collects blobs
+    // that stayed unreferenced for a while. Values written before this version are
+    // paths and are adopted into the store by AttachmentGcWorker.
+    private static void migrateTo8(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE attachments("
+                + "hash TEXT PRIMARY KEY,"
+                + "name TEXT,"
+                + "size INTEGER NOT NULL,"
+                + "mime_type TEXT,"
+                + "ref_count INTEGER NOT NULL DEFAULT 0,"
+                + "touched_at INTEGER NOT NULL"
+                + ")");
+        db.execSQL("CREATE INDEX idx_attachments_unreferenced ON attachments(touched_at) WHERE ref_count <= 0");
+        createAttachmentTriggers(db);
+    }
+
+    // Any migration that rebuilds the tasks table has to call this again.
+    private static void createAttachmentTriggers(SQLiteDatabase db) {
+        String now = "CAST(strftime('%s', 'now') AS INTEGER) * 1000";
+        db.execSQL("CREATE TRIGGER attachments_ref_after_insert AFTER INSERT ON tasks "
+                + "WHEN new.attachment IS NOT NULL BEGIN "
+                + "UPDATE attachments SET ref_count = ref_count + 1, touched_at = " + now + " WHERE hash = new.attachment; END");
+        db.execSQL("CREATE TRIGGER attachments_ref_after_delete AFTER DELETE ON tasks "
+                + "WHEN old.attachment IS NOT NULL BEGIN "
+                + "UPDATE attachments SET ref_count = ref_count - 1, touched_at = " + now + " WHERE hash = old.attachment; END");
+        db.execSQL("CREATE TRIGGER attachments_ref_after_update AFTER UPDATE OF attachment ON tasks "
+                + "WHEN old.attachment IS NOT new.attachment BEGIN "
+                + "UPDATE attachments SET ref_count = ref_count - 1, touched_at = " + now + " WHERE hash = old.attachment; "
+                + "UPDATE attachments SET ref_count = ref_count + 1, touched_at = " + now + " WHERE hash = new.attachment; END");
+    }
+
+    // Counters for the statistics screen, so it reads a handful of rows instead of the
+    // tasks. task_stats_daily holds per epoch day (task dates are local wall-clock
+    // millis, see TaskDateCodec) the tasks created, the tasks completed and the open
+    // tasks due that day; task_stats_category the tasks and open tasks per category,
+    // -1 standing for none. Both are kept by triggers on tasks, rows whose counters
+    // dropped back to zero are left in place.
+    private static void migrateTo9(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE task_stats_daily("
+                + "day INTEGER PRIMARY KEY,"
+                + "created INTEGER NOT NULL DEFAULT 0,"
+                + "completed INTEGER NOT NULL DEFAULT 0,"
+                + "open_due INTEGER NOT NULL DEFAULT 0"
+                + ")");
+        // Overdue counts sum the days before today that still have open tasks, which
+        // stay few however long the history grows.
+        db.execSQL("CREATE INDEX idx_task_stats_daily_open_due ON task_stats_daily(day) WHERE open_due > 0");
+        db.execSQL("CREATE TABLE task_stats_category("
+                + "category_id INTEGER PRIMARY KEY,"
+                + "total INTEGER NOT NULL DEFAULT 0,"
+                + "open INTEGER NOT NULL DEFAULT 0"
+                + ")");
+        db.execSQL("INSERT INTO task_stats_daily(day, created, completed, open_due) "
+                + "SELECT day, SUM(created), SUM(completed), SUM(open_due) FROM ("
+                + "SELECT " + epochDay("created_at") + " AS day, 1 AS created, 0 AS completed, 0 AS open_due FROM tasks "
+                + "UNION ALL SELECT " + epochDay("done_at") + ", 0, 1, 0 FROM tasks WHERE " + isCompleted("") + " "
+                + "UNION ALL SELECT " + epochDay("due_date") + ", 0, 0, 1 FROM tasks WHERE " + isOpen("")
+                + ") GROUP BY day");
+        db.execSQL("INSERT INTO task_stats_category(category_id, total, open) "
+                + "SELECT IFNULL(category_id, -1), COUNT(*), SUM(" + openCount("") + ") FROM tasks "
+                + "GROUP BY IFNULL(category_id, -1)");
+        createStatsTriggers(db);
+    }
+
+    // Any migration that rebuilds the tasks table has to call this again.
+    private static void createStatsTriggers(SQLiteDatabase db) {
+        db.execSQL("CREATE TRIGGER task_stats_after_insert AFTER INSERT ON tasks BEGIN "
+                + countTask("new.", 1) + "END");
+        db.execSQL("CREATE TRIGGER task_stats_after_delete AFTER DELETE ON tasks BEGIN "
+                + countTask("old.", -1) + "END");
+        // updateTask writes every column, so unchanged rows are skipped here.
+        db.execSQL("CREATE TRIGGER task_stats_after_update "
+                + "AFTER UPDATE OF created_at, due_date, done_at, done, category_id ON tasks "
+                + "WHEN old.created_at IS NOT new.created_at OR old.due_date IS NOT new.due_date "
+                + "OR old.done_at IS NOT new.done_at OR old.done IS NOT new.done "
+                + "OR old.category_id IS NOT new.category_id BEGIN "
+                + countTask("old.", -1) + countTask("new.", 1) + "END");
+    }
+
+    // Trigger statements adding (delta 1) or removing (delta -1) the task in row, "new."
+    // or "old.", to the counters. Only additions can meet a day or category without a
+    // row yet.
+    private static String countTask(String row, int delta) {
+        String change = delta > 0 ? " + 1" : " - 1";
+        String category = "IFNULL(" + row + "category_id, -1)";
+        StringBuilder sql = new StringBuilder();
+        if (delta > 0) {
+            sql.append("INSERT OR IGNORE INTO task_stats_daily(day) VALUES (").append(epochDay(row + "created_at")).append("); ");
+        }
+        sql.append("UPDATE task_stats_daily SET created = created").append(change)
+                .append(" WHERE day = ").append(epochDay(row + "created_at")).append("; ");
+        if (delta > 0) {
+            sql.append("INSERT OR IGNORE INTO task_stats_daily(day) SELECT ").append(epochDay(row + "done_at"))
+                    .append(" WHERE ").append(isCompleted(row)).append("; ");
+        }
+        sql.append("UPDATE task_stats_daily SET completed = completed").append(change)
+                .append(" WHERE ").append(isCompleted(row)).append(" AND day = ").append(epochDay(row + "done_at")).append("; ");
+        if (delta > 0) {
+            sql.append("INSERT OR IGNORE INTO task_stats_daily(day) SELECT ").append(epochDay(row + "due_date"))
+                    .append(" WHERE ").append(isOpen(row)).append("; ");
+        }
+        sql.append("UPDATE task_stats_daily SET open_due = open_due").append(change)
+                .append(" WHERE ").append(isOpen(row)).append(" AND day = ").append(epochDay(row + "due_date")).append("; ");
+        if (delta > 0) {
+            sql.append("INSERT OR IGNORE INTO task_stats_category(category_id) VALUES (").append(category).append("); ");
+        }
+        sql.append("UPDATE task_stats_category SET total = total").append(change)
+                .append(", open = open ").append(delta > 0 ? "+ " : "- ").append(openCount(row))
+                .append(" WHERE category_id = ").append(category).append("; ");
+        return sql.toString();
+    }
+
+    // Task dates are never before 1970, so truncating division gives the epoch day.
+    private static String epochDay(String column) {
+        return column + " / 86400000";
+    }
+
+    // A completed task without done_at cannot be put on a day and is not counted.
+    private static String isCompleted(String row) {
+        return row + "done = 1 AND " + row + "done_at IS NOT NULL";
+    }
+
+    private static String isOpen(String row) {
+        return row + "done = 0";
+    }
+
+    private static String openCount(String row) {
+        return "CASE WHEN " + isOpen(row) + " THEN 1 ELSE 0 END";
+    }
+}
@@ -6,51 +6,59 @@ import android.app.NotificationManager;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.View;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.ImageButton;
+import android.widget.LinearLayout;
+import android.widget.TextView;
 
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts.StartActivityForResult;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
+import androidx.core.app.NotificationManagerCompat;
 import androidx.core.content.FileProvider;
 import androidx.recyclerview.widget.DefaultItemAnimator;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
-import androidx.work.Data;
-import androidx.work.OneTimeWorkRequest;
-import androidx.work.WorkManager;
 
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 
 import java.io.File;
-import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.concurrent.Future;
 
 public class MainActivity extends AppCompatActivity implements TasksViewClickListener{
 
-    private List<Task> tasks = new ArrayList<>();
+    private static final long SEARCH_DEBOUNCE_MS = 300;
+
+    private final Runnable debouncedSearch = () -> searchTasks(this.searchInput);
     private TasksAdapter adapter;
-    private ActivityResultLauncher<Intent> addTaskLauncher;
     private ActivityResultLauncher<Intent> editTaskLauncher;
     private ActivityResultLauncher<Intent> preferencesLauncher;
-    private DatabaseHandler db = new DatabaseHandler(this);
+    private AsyncDatabaseHandler db;
+    private Future<?> pendingLoad;
     private boolean sortAscending = true;
     private boolean hideCompleted = false;
     private int filterCategory = -1;
     private EditText searchInput;
+    private LinearLayout selectionBar;
+    private TextView selectionCount;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
+        db = new AsyncDatabaseHandler(this);
+
         ActivityCompat.requestPermissions(this,
                 new String[]{
                         Manifest.permission.WRITE_EXTERNAL_STORAGE,
@@ -63,6 +71,8 @@ public class MainActivity extends AppCompatActivity implements TasksViewClickLis
         NotificationManager notificationManager = getSystemService(NotificationManager.class);
         notificationManager.createNotificationChannel(channel);
 
+        AttachmentGcWorker.schedule(this);
+
         RecyclerView rv = findViewById(R.id.rv_todo);
         rv.setItemAnimator(new DefaultItemAnimator());
 
@@ -72,9 +82,7 @@ public class MainActivity extends AppCompatActivity implements TasksViewClickLis
         hideCompleted = getSharedPreferences("prefs", MODE_PRIVATE).getBoolean("hide_completed", false);
         filterCategory = getSharedPreferences("prefs", MODE_PRIVATE).getInt("filter_category", -1);
 
-        updateTasks(db.getAllTasks(sortAscending, filterCategory));
-
-        adapter = new TasksAdapter(tasks, this);
+        adapter = new TasksAdapter(this, ThumbnailLoader.getInstance(this));
         rv.setAdapter(adapter);
 
         FloatingActionButton addTask = findViewById(R.id.button_add);
@@ -82,78 +90,72 @@ public class MainActivity extends AppCompatActivity implements TasksViewClickLis
         Button searchButton = findViewById(R.id.button_search);
         ImageButton sortButton = findViewById(R.id.button_sort);
         ImageButton preferencesButton = findViewById(R.id.preferences_button);
+        ImageButton statisticsButton = findViewById(R.id.statistics_button);
+        selectionBar = findViewById(R.id.selection_bar);
+        selectionCount = findViewById(R.id.selection_count);
+        Button selectionDoneButton = findViewById(R.id.selection_done_button);
+        Button selectionCategoryButton = findViewById(R.id.selection_category_button);
+        Button selectionDeleteButton = findViewById(R.id.selection_delete_button);
+        ImageButton selectionCancelButton = findViewById(R.id.selection_cancel_button);
 
         String notificationTaskTitle = "";
         Bundle extras = getIntent().getExtras();
         if (extras != null) {
             notificationTaskTitle = extras.getString("task_title");
             searchInput.setText(notificationTaskTitle);
-            searchTasks(searchInput);
         }
-
+        searchTasks(searchInput);
 
         sortButton.setOnClickListener(v -> {
             sortAscending = !sortAscending;
             sortButton.setImageResource(sortAscending ? android.R.drawable.arrow_down_float : android.R.drawable.arrow_up_float);
-            if (searchInput.getText().toString().isEmpty()) {
-                updateTasks(db.getAllTasks(sortAscending, filterCategory));
-                adapter.notifyDataSetChanged();
-            } else {
-                searchTasks(searchInput);
-            }
+            searchTasks(searchInput);
         });
 
         searchButton.setOnClickListener(v -> {
             searchTasks(searchInput);
         });
 
-        addTaskLauncher = registerForActivityResult(new StartActivityForResult(),
-                result -> {
-                    if (result.getResultCode() == RESULT_OK) {
-                        Task newTask = (Task) result.getData().getSerializableExtra("task");
-                        if (newTask.isNotificationEnabled()) {
-                            scheduleNotification(newTask);
-                        } else {
-                            newTask.setNotificationScheduled(false);
-                        }
-                        db.addTask(newTask);
-                        updateTasks(db.getAllTasks(sortAscending, filterCategory));
-                        adapter.notifyDataSetChanged();
-                    }
-                });
-        addTask.setOnClickListener(view -> {
-            Intent intent = new Intent(this, NewTaskActivity.class);
-            addTaskLauncher.launch(intent);
+        searchInput.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                searchInput.removeCallbacks(debouncedSearch);
+                searchInput.postDelayed(debouncedSearch, SEARCH_DEBOUNCE_MS);
+            }
         });
 
+        // NewTaskActivity saves the task itself, only the list needs reloading.
         editTaskLauncher = registerForActivityResult(new StartActivityForResult(),
                 result -> {
                     if (result.getResultCode() == RESULT_OK) {
-                        Task task = (Task) result.getData().getSerializableExtra("task");
-                        if (task.isNotificationEnabled() && !task.isNotificationScheduled()) {
-                            scheduleNotification(task);
-                        }
-                        if (!task.isNotificationEnabled() && task.isNotificationScheduled()) {
-                            cancelNotification(task);
-                        }
-                        db.updateTask(task);
-                        updateTasks(db.getAllTasks(sortAscending, filterCategory));
-                        adapter.notifyDataSetChanged();
+                        searchTasks(searchInput);
                     }
                 });
+        addTask.setOnClickListener(view -> {
+            Intent intent = new Intent(this, NewTaskActivity.class);
+            editTaskLauncher.launch(intent);
+        });
 
         preferencesLauncher = registerForActivityResult(new StartActivityForResult(),
                 result -> {
                     if (result.getResultCode() == RESULT_OK || result.getResultCode() == RESULT_CANCELED) {
-                        hideCompleted = getSharedPreferences("prefs", MODE_PRIVATE).getBoolean("hide_completed", false);
-                        filterCategory = getSharedPreferences("prefs", MODE_PRIVATE).getInt("filter_category", -1);
-                        if (searchInput.getText().toString().isEmpty()) {
-                            updateTasks(db.getAllTasks(sortAscending, filterCategory));
-                            adapter.notifyDataSetChanged();
-                        } else {
+                        boolean newHideCompleted = getSharedPreferences("prefs", MODE_PRIVATE).getBoolean("hide_completed", false);
+                        int newFilterCategory = getSharedPreferences("prefs", MODE_PRIVATE).getInt("filter_category", -1);
+                        boolean tasksChanged = result.getData() != null
+                                && result.getData().getBooleanExtra(PreferencesActivity.EXTRA_TASKS_CHANGED, false);
+                        if (newHideCompleted != hideCompleted || newFilterCategory != filterCategory || tasksChanged) {
+                            hideCompleted = newHideCompleted;
+                            filterCategory = newFilterCategory;
                             searchTasks(searchInput);
                         }
-                        adapter.notifyDataSetChanged();
                     }
                 });
 
@@ -161,106 +163,198 @@ public class MainActivity extends AppCompatActivity implements TasksViewClickLis
             Intent intent = new Intent(this, PreferencesActivity.class);
             preferencesLauncher.launch(intent);
         });
+
+        statisticsButton.setOnClickListener(v -> startActivity(new Intent(this, StatisticsActivity.class)));
+
+        selectionDoneButton.setOnClickListener(v -> completeSelectedTasks());
+        selectionCategoryButton.setOnClickListener(v -> recategorizeSelectedTasks());
+        selectionDeleteButton.setOnClickListener(v -> deleteSelectedTasks());
+        selectionCancelButton.setOnClickListener(v -> {
+            adapter.clearSelection();
+            updateSelectionBar();
+        });
     }
 
-    private void scheduleNotification(Task task) {
-        int notificationTimeHours = getSharedPreferences("prefs", MODE_PRIVATE).getInt("notification_time", 1);
-        if (task.getDueDate().minusHours(notificationTimeHours).isBefore(LocalDateTime.now())) {
-            return;
+    @Override
+    public void onBackPressed() {
+        if (adapter.isSelectionMode()) {
+            adapter.clearSelection();
+            updateSelectionBar();
+        } else {
+            super.onBackPressed();
         }
+    }
 
-//        Duration duration = Duration.between(LocalDateTime.now(), task.getDueDate().minusHours(notificationTimeHours));
-        Duration duration = Duration.between(LocalDateTime.now(), LocalDateTime.now().plusSeconds(10));
-
-        OneTimeWorkRequest workRequest = new OneTimeWorkRequest.Builder(OneTimeScheduleWorker.class)
-                .setInitialDelay(duration.toMillis(), TimeUnit.MILLISECONDS)
-                .setInputData(new Data.Builder()
-                        .putString("task_title", task.getTitle())
-                        .putString("task_description", task.getDescription())
-                        .build())
-                .addTag(String.valueOf(task.getId()))
-                .build();
-        WorkManager.getInstance(this).enqueue(workRequest);
-        task.setNotificationScheduled(true);
+    private void updateSelectionBar() {
+        if (adapter.isSelectionMode()) {
+            selectionCount.setText(getString(R.string.selected_count, adapter.getSelectedIds().size()));
+            selectionBar.setVisibility(View.VISIBLE);
+        } else {
+            selectionBar.setVisibility(View.GONE);
+        }
     }
 
-    private void cancelNotification(Task task) {
-        WorkManager.getInstance(this).cancelAllWorkByTag(String.valueOf(task.getId()));
-        task.setNotificationScheduled(false);
+    private void completeSelectedTasks() {
+        dismissReminders(adapter.getSelectedIds());
+        db.setDone(adapter.getSelectedIds(), true, () -> searchTasks(searchInput));
+        adapter.clearSelection();
+        updateSelectionBar();
+    }
+
+    private void deleteSelectedTasks() {
+        deleteTasks(adapter.getSelectedTasks(), () -> searchTasks(searchInput));
+        adapter.clearSelection();
+        updateSelectionBar();
+    }
+
+    private void deleteTasks(List<Task> tasks, Runnable onComplete) {
+        final List<Integer> ids = new ArrayList<>();
+        for (Task task : tasks) {
+            ids.add(task.getId());
+        }
+        dismissReminders(ids);
+        // Attachments may be shared, so their files are left to AttachmentGcWorker.
+        db.deleteTasks(ids, onComplete);
+    }
+
+    private void recategorizeSelectedTasks() {
+        final List<Integer> ids = adapter.getSelectedIds();
+        db.getCategoriesWithTaskCounts(categories -> {
+            final String[] options = new String[categories.size() + 1];
+            options[0] = getString(R.string.no_category);
+            for (int i = 0; i < categories.size(); i++) {
+                Category category = categories.get(i);
+                options[i + 1] = getString(R.string.category_with_count, category.getName(), category.getTaskCount());
+            }
+
+            AlertDialog.Builder builder = new AlertDialog.Builder(this);
+            builder.setTitle("Choose category");
+            builder.setItems(options, (dialogInterface, i) -> {
+                int categoryId = i == 0 ? -1 : categories.get(i - 1).getId();
+                db.setCategory(ids, categoryId, () -> searchTasks(searchInput));
+                adapter.clearSelection();
+                updateSelectionBar();
+            });
+
+            builder.show();
+        });
+    }
+
+    // Reminder notifications are keyed by task id.
+    private void dismissReminders(List<Integer> ids) {
+        NotificationManagerCompat notificationManager = NotificationManagerCompat.from(this);
+        for (int id : ids) {
+            notificationManager.cancel(id);
+        }
     }
 
     private void searchTasks(EditText searchInput) {
-        String query = searchInput.getText().toString();
-        if (query.equals("")) {
-            updateTasks(db.getAllTasks(sortAscending, filterCategory));
+        searchInput.removeCallbacks(debouncedSearch);
+        if (pendingLoad != null) {
+            pendingLoad.cancel(false);
+            pendingLoad = null;
+        }
+
+        final TaskFilter filter = new TaskFilter();
+        filter.setCompletion(hideCompleted ? TaskFilter.Completion.OPEN : TaskFilter.Completion.ALL);
+        filter.setCategoryId(filterCategory);
+        filter.setSortAscending(sortAscending);
+        filter.setText(searchInput.getText().toString());
+        if (filter.hasText()) {
+            pendingLoad = db.getTasks(filter, adapter::setTasks);
         } else {
-            updateTasks(db.getTasksByTitle(query, sortAscending, filterCategory));
+            adapter.setPageSource((after, pageSize, callback) -> db.getTasksPage(filter, after, pageSize, callback));
         }
-        adapter.notifyDataSetChanged();
     }
 
-    private void updateTasks(List<Task> tempTasks) {
-        tasks.clear();
-        if (hideCompleted) {
-            tasks.addAll(tempTasks.stream()
-                    .filter(t -> !t.isDone())
-                    .collect(Collectors.toList()));
-        } else {
-            tasks.addAll(tempTasks);
+    @Override
+    public boolean onLongClick(View v, int position) {
+        if (position == RecyclerView.NO_POSITION) {
+            return false;
         }
+        adapter.toggleSelection(position);
+        updateSelectionBar();
+        return true;
     }
 
     @Override
     public void onClick(View v, int position) {
+        if (position == RecyclerView.NO_POSITION) {
+            return;
+        }
+        if (adapter.isSelectionMode()) {
+            adapter.toggleSelection(position);
+            updateSelectionBar();
+            return;
+        }
+
+        Task task = adapter.getTask(position);
         switch(v.getId()) {
             case R.id.done_checkbox:
-                if (tasks.get(position).isDone()) {
-                    tasks.get(position).setDone(false);
-                    tasks.get(position).setDoneAt(null);
-                    scheduleNotification(tasks.get(position));
-                } else {
-                    tasks.get(position).setDone(true);
-                    tasks.get(position).setDoneAt(LocalDateTime.now());
-                    cancelNotification(tasks.get(position));
-                }
-                db.updateTask(tasks.get(position));
-                if (searchInput.getText().toString().isEmpty()) {
-                    updateTasks(db.getAllTasks(sortAscending, filterCategory));
+                if (task.isDone()) {
+                    task.setDone(false);
+                    task.setDoneAt(null);
+                    db.getTask(task.getId(), fullTask -> {
+                        if (fullTask == null) {
+                            return;
+                        }
+                        fullTask.setDone(false);
+                        fullTask.setDoneAt(null);
+                        ReminderScheduler.prepare(this, fullTask);
+                        db.updateTask(fullTask, () -> {
+                            if (fullTask.isNotificationScheduled()) {
+                                ReminderScheduler.reschedule(this);
+                            }
+                        });
+                    });
                 } else {
-                    searchTasks(searchInput);
+                    task.setDone(true);
+                    task.setDoneAt(LocalDateTime.now());
+                    task.setNotificationScheduled(false);
+                    dismissReminders(Collections.singletonList(task.getId()));
+                    db.setDone(Collections.singletonList(task.getId()), true, () -> {
+                        int index = adapter.indexOf(task);
+                        if (hideCompleted && index != -1) {
+                            adapter.removeTask(index);
+                        }
+                    });
                 }
+                adapter.notifyItemChanged(position);
                 break;
             case R.id.delete_button:
-                if (tasks.get(position).getAttachmentPath() != null) {
-                    File file = new File(tasks.get(position).getAttachmentPath());
-                    file.delete();
-                }
-                db.deleteTask(tasks.get(position).getId());
-                cancelNotification(tasks.get(position));
-                tasks.remove(position);
-                adapter.notifyItemRemoved(position);
+                deleteTasks(Collections.singletonList(task), null);
+                adapter.removeTask(position);
                 break;
             case R.id.edit_button:
                 Intent intent = new Intent(this, NewTaskActivity.class);
-                intent.putExtra("task", tasks.get(position));
+                intent.putExtra(NewTaskActivity.EXTRA_TASK_ID, task.getId());
                 editTaskLauncher.launch(intent);
                 break;
             case R.id.attachment_button:
-                openAttachment(position);
+            case R.id.attachment_thumbnail:
+                openAttachment(task);
                 break;
         }
-        adapter.notifyItemChanged(position);
     }
 
-    private void openAttachment(int position) {
-        File file = new File(tasks.get(position).getAttachmentPath());
-
-        Uri uri = FileProvider.getUriForFile(this, BuildConfig.APPLICATION_ID + ".provider", file);
-        String mimeType = getContentResolver().getType(uri);
-
-        Intent intent = new Intent(Intent.ACTION_VIEW);
-        intent.setDataAndType(uri, mimeType);
-        intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
-        startActivity(intent);
+    private void openAttachment(Task task) {
+        if (task == null || task.getAttachment() == null) {
+            return;
+        }
+        String reference = task.getAttachment();
+        db.getAttachment(reference, attachment -> {
+            File file = AttachmentStore.getInstance(this).resolve(reference);
+
+            // Stored files are named by hash, so the type can't be guessed from the name.
+            Uri uri = FileProvider.getUriForFile(this, BuildConfig.APPLICATION_ID + ".provider", file);
+            String mimeType = attachment != null && attachment.getMimeType() != null
+                    ? attachment.getMimeType()
+                    : getContentResolver().getType(uri);
+
+            Intent intent = new Intent(Intent.ACTION_VIEW);
+            intent.setDataAndType(uri, mimeType);
+            intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+            startActivity(intent);
+        });
     }
 }
\ No newline at end of file
@@ -12,34 +12,45 @@ import android.provider.MediaStore;
 import android.widget.Button;
 import android.widget.CheckBox;
 import android.widget.EditText;
+import android.view.View;
 import android.widget.ImageButton;
+import android.widget.ProgressBar;
 
 import androidx.activity.result.ActivityResult;
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.ViewModelProvider;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.nio.file.Path;
 import java.text.SimpleDateFormat;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.Calendar;
-import java.util.List;
 import java.util.Locale;
 import java.util.TimeZone;
-import java.util.UUID;
 
+// Edits the task whose id is passed as EXTRA_TASK_ID, or creates one without it. The
+// task is loaded and saved here through the data layer; the caller only learns that
+// something was saved from RESULT_OK.
 public class NewTaskActivity extends AppCompatActivity {
 
+    public static final String EXTRA_TASK_ID = "task_id";
+
+    private static final String STATE_DUE_DATE = "due_date";
+    private static final String STATE_CATEGORY_ID = "category_id";
+    private static final String STATE_ATTACHMENT = "attachment";
+
     private ActivityResultLauncher<Intent> filePickerLauncher;
-    private Path attachmentPath;
-    private final DatabaseHandler db = new DatabaseHandler(this);
+    private final Calendar calendar = Calendar.getInstance();
+    private Task savedTask;
+    private boolean loading = false;
+    private String attachmentReference;
+    private AsyncDatabaseHandler db;
+    private AttachmentImportViewModel attachmentImport;
     private int categoryId = -1;
 
     @Override
@@ -47,6 +58,9 @@ public class NewTaskActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_new_task);
 
+        db = new AsyncDatabaseHandler(this);
+        attachmentImport = new ViewModelProvider(this).get(AttachmentImportViewModel.class);
+
         EditText title = findViewById(R.id.task_title_edit);
         EditText description = findViewById(R.id.task_description_edit);
         EditText dueDate = findViewById(R.id.due_date_edit);
@@ -58,8 +72,8 @@ public class NewTaskActivity extends AppCompatActivity {
         ImageButton deleteAttachment = findViewById(R.id.delete_attachment_button);
         EditText categoryName = findViewById(R.id.category_input);
         ImageButton newCategory = findViewById(R.id.clear_category_button);
+        ProgressBar attachmentProgress = findViewById(R.id.attachment_progress);
 
-        Calendar calendar = Calendar.getInstance();
         DatePickerDialog.OnDateSetListener date = (view, year, month, dayOfMonth) -> {
             calendar.set(Calendar.YEAR, year);
             calendar.set(Calendar.MONTH, month);
@@ -88,36 +102,92 @@ public class NewTaskActivity extends AppCompatActivity {
             timePickerDialog.show();
         });
 
-        Intent incomingIntent = getIntent();
-        Task savedTask = (Task) incomingIntent.getSerializableExtra("task");
-        if (savedTask != null) {
-            title.setText(savedTask.getTitle());
-            description.setText(savedTask.getDescription());
-            LocalDateTime localDueDate = savedTask.getDueDate();
-            dueDate.setText(localDueDate.toString().substring(0, 10));
-            dueTime.setText(localDueDate.toString().substring(11, 16));
-            attachment.setText(savedTask.getAttachmentPath());
-            done.setChecked(savedTask.isDone());
-            notify.setChecked(savedTask.isNotificationEnabled());
-
-            Category category = db.getCategoryById(savedTask.getCategoryId());
-            if (category != null) {
-                categoryName.setText(category.getName());
-            }
+        // After a process death the views restore their own text, so only the state kept
+        // outside of them comes from the bundle. The task itself is always reloaded.
+        if (savedInstanceState != null) {
+            calendar.setTimeInMillis(savedInstanceState.getLong(STATE_DUE_DATE));
+            categoryId = savedInstanceState.getInt(STATE_CATEGORY_ID, -1);
+            attachmentReference = savedInstanceState.getString(STATE_ATTACHMENT);
+        }
+
+        int taskId = getIntent().getIntExtra(EXTRA_TASK_ID, -1);
+        if (taskId != -1) {
+            loading = true;
+            save.setEnabled(false);
+            db.getTask(taskId, task -> {
+                if (task == null) {
+                    finish();
+                    return;
+                }
+                savedTask = task;
+                loading = false;
+                save.setEnabled(!attachmentImport.isImporting());
+                if (savedInstanceState != null) {
+                    return;
+                }
+
+                title.setText(task.getTitle());
+                description.setText(task.getDescription());
+                LocalDateTime localDueDate = task.getDueDate();
+                dueDate.setText(localDueDate.toString().substring(0, 10));
+                dueTime.setText(localDueDate.toString().substring(11, 16));
+                attachmentReference = task.getAttachment();
+                if (attachmentReference != null) {
+                    String reference = attachmentReference;
+                    db.getAttachment(reference, stored ->
+                            attachment.setText(stored != null ? stored.getName() : new File(reference).getName()));
+                }
+                done.setChecked(task.isDone());
+                notify.setChecked(task.isNotificationEnabled());
 
-            calendar.set(Calendar.YEAR, localDueDate.getYear());
-            calendar.set(Calendar.MONTH, localDueDate.getMonthValue() - 1);
-            calendar.set(Calendar.DAY_OF_MONTH, localDueDate.getDayOfMonth());
-            calendar.set(Calendar.HOUR_OF_DAY, localDueDate.getHour());
-            calendar.set(Calendar.MINUTE, localDueDate.getMinute());
+                if (task.getCategoryName() != null) {
+                    categoryName.setText(task.getCategoryName());
+                }
+
+                calendar.set(Calendar.YEAR, localDueDate.getYear());
+                calendar.set(Calendar.MONTH, localDueDate.getMonthValue() - 1);
+                calendar.set(Calendar.DAY_OF_MONTH, localDueDate.getDayOfMonth());
+                calendar.set(Calendar.HOUR_OF_DAY, localDueDate.getHour());
+                calendar.set(Calendar.MINUTE, localDueDate.getMinute());
+
+                categoryId = task.getCategoryId();
+            });
+        }
 
-            categoryId = savedTask.getCategoryId();
+        // An import started before a configuration change is still running, its result
+        // comes to this activity now.
+        if (attachmentImport.isImporting()) {
+            attachmentProgress.setIndeterminate(true);
+            attachmentProgress.setVisibility(View.VISIBLE);
+            save.setEnabled(false);
         }
+        attachmentImport.setListener(new AttachmentImporter.Listener() {
+            @Override
+            public void onProgress(int percent) {
+                attachmentProgress.setIndeterminate(percent < 0);
+                attachmentProgress.setProgress(Math.max(percent, 0));
+            }
+
+            @Override
+            public void onComplete(Attachment stored) {
+                attachmentProgress.setVisibility(View.GONE);
+                save.setEnabled(!loading);
+                attachmentReference = stored.getHash();
+            }
+
+            @Override
+            public void onFailure(IOException e) {
+                attachmentProgress.setVisibility(View.GONE);
+                save.setEnabled(!loading);
+                attachment.setText("");
+                attachment.setError("Could not copy the file");
+            }
+        });
 
         filePickerLauncher = registerForActivityResult(new ActivityResultContracts.StartActivityForResult(),
                 result -> {
                     if (result.getResultCode() == RESULT_OK) {
-                        saveAttachment(result, attachment, savedTask);
+                        saveAttachment(result, attachment, attachmentProgress, save);
                     }
                 });
 
@@ -129,23 +199,18 @@ public class NewTaskActivity extends AppCompatActivity {
         });
 
         deleteAttachment.setOnClickListener(v -> {
-            if (savedTask != null && savedTask.getAttachmentPath() != null) {
-                File file = new File(savedTask.getAttachmentPath());
-                file.delete();
-                savedTask.setAttachmentPath(null);
-            } else {
-                File dir = new File(getExternalFilesDir("attachments").getAbsolutePath());
-                File file = new File(dir, attachment.getText().toString());
-                file.delete();
+            if (attachmentImport.isImporting()) {
+                cancelImport(attachment, attachmentProgress, save);
+                return;
             }
+            // Only the reference goes; the store collects the file once nothing uses it.
             attachment.setText("");
-            attachmentPath = null;
+            attachmentReference = null;
         });
 
-        categoryName.setOnClickListener(v -> {
-            final List<Category> categories = db.getAllCategories();
+        categoryName.setOnClickListener(v -> db.getCategoriesWithTaskCounts(categories -> {
             final String[] options = categories.stream()
-                    .map(Category::getName)
+                    .map(category -> getString(R.string.category_with_count, category.getName(), category.getTaskCount()))
                     .toArray(String[]::new);
 
             AlertDialog.Builder builder = new AlertDialog.Builder(this);
@@ -159,13 +224,13 @@ public class NewTaskActivity extends AppCompatActivity {
             builder.setItems(options, new DialogInterface.OnClickListener() {
                 @Override
                 public void onClick(DialogInterface dialogInterface, int i) {
-                    categoryName.setText(String.valueOf(options[i]));
+                    categoryName.setText(categories.get(i).getName());
                     categoryId = categories.get(i).getId();
                 }
             });
 
             builder.show();
-        });
+        }));
 
         newCategory.setOnClickListener(v -> {
             final EditText input = new EditText(this);
@@ -184,10 +249,10 @@ public class NewTaskActivity extends AppCompatActivity {
                     Category category = new Category();
                     category.setName(name);
 
-                    db.addCategory(category);
-
-                    categoryName.setText(name);
-                    categoryId = category.getId();
+                    db.addCategory(category, () -> {
+                        categoryName.setText(name);
+                        categoryId = category.getId();
+                    });
                 }
             });
 
@@ -199,80 +264,95 @@ public class NewTaskActivity extends AppCompatActivity {
                 return;
             }
 
-            if (savedTask != null) {
-                savedTask.setTitle(title.getText().toString());
-                savedTask.setDescription(description.getText().toString());
-
-                savedTask.setDueDate(getLocalDateTime(calendar));
-                savedTask.setDone(done.isChecked());
-                savedTask.setNotificationEnabled(notify.isChecked());
-                if (attachmentPath != null) {
-                    savedTask.setAttachmentPath(attachmentPath.toString());
-                }
-                if (done.isChecked()) {
-                    savedTask.setDoneAt(LocalDateTime.now());
-                }
-                savedTask.setCategoryId(categoryId);
-
-                Intent intent = new Intent();
-                intent.putExtra("task", savedTask);
-                setResult(RESULT_OK, intent);
-            } else {
-                Task task = new Task();
-                task.setTitle(title.getText().toString());
-                task.setDescription(description.getText().toString());
+            Task task = savedTask != null ? savedTask : new Task();
+            if (savedTask == null) {
                 task.setCreatedAt(LocalDateTime.now());
-                task.setDueDate(getLocalDateTime(calendar));
-                task.setDone(done.isChecked());
-                if (attachmentPath != null) {
-                    task.setAttachmentPath(attachmentPath.toString());
-                }
-                if (done.isChecked()) {
-                    task.setDoneAt(LocalDateTime.now());
+            }
+            // Like setDone, the date is taken when the task gets completed and dropped when
+            // it is reopened; saving other edits keeps it, the statistics count by it.
+            if (done.isChecked() && !task.isDone()) {
+                task.setDoneAt(LocalDateTime.now());
+            } else if (!done.isChecked()) {
+                task.setDoneAt(null);
+            }
+            task.setTitle(title.getText().toString());
+            task.setDescription(description.getText().toString());
+            task.setDueDate(getLocalDateTime(calendar));
+            task.setDone(done.isChecked());
+            task.setNotificationEnabled(notify.isChecked());
+            task.setAttachment(attachmentReference);
+            task.setCategoryId(categoryId);
+            ReminderScheduler.prepare(this, task);
+
+            save.setEnabled(false);
+            Runnable onSaved = () -> {
+                if (task.isNotificationScheduled()) {
+                    ReminderScheduler.reschedule(this);
                 }
-                task.setNotificationEnabled(notify.isChecked());
-                task.setCategoryId(categoryId);
-
-                Intent intent = new Intent();
-                intent.putExtra("task", task);
-                setResult(RESULT_OK, intent);
+                setResult(RESULT_OK);
+                finish();
+            };
+            if (savedTask != null) {
+                db.updateTask(task, onSaved);
+            } else {
+                db.addTask(task, onSaved);
             }
-            finish();
         });
 
     }
 
-    private void saveAttachment(ActivityResult result, EditText attachmentText, Task savedTask) {
-        if (savedTask != null && savedTask.getAttachmentPath() != null) {
-            File dir = new File(getExternalFilesDir("attachments").getAbsolutePath());
-            File file = new File(dir, savedTask.getAttachmentPath());
-            if (file.exists()) {
-                file.delete();
-            }
+    @Override
+    protected void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putLong(STATE_DUE_DATE, calendar.getTimeInMillis());
+        outState.putInt(STATE_CATEGORY_ID, categoryId);
+        outState.putString(STATE_ATTACHMENT, attachmentReference);
+    }
+
+    // The attachment text restores itself, but an import it was showing may have died with
+    // the process. Unless the import is still running, the text follows the reference.
+    @Override
+    protected void onRestoreInstanceState(@NonNull Bundle savedInstanceState) {
+        super.onRestoreInstanceState(savedInstanceState);
+        if (attachmentImport.isImporting()) {
+            return;
         }
+        EditText attachment = findViewById(R.id.attachment_edit);
+        String reference = attachmentReference;
+        if (reference == null) {
+            attachment.setText("");
+            return;
+        }
+        db.getAttachment(reference, stored ->
+                attachment.setText(stored != null ? stored.getName() : new File(reference).getName()));
+    }
 
+    // The import is kept across configuration changes, the view model cancels it when the
+    // activity finishes.
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        attachmentImport.setListener(null);
+    }
+
+    private void saveAttachment(ActivityResult result, EditText attachmentText, ProgressBar progressBar,
+                                Button save) {
         Uri uri = Uri.parse(result.getData().getDataString());
 
         String filename = getFileName(uri);
-        filename = generateUniqueFilename(filename);
         attachmentText.setText(filename);
 
-        File dir = new File(getExternalFilesDir("attachments").getAbsolutePath());
-        File destination = new File(dir, filename);
-
-        try(InputStream in = getContentResolver().openInputStream(uri);) {
-            destination.createNewFile();
-            copy(in, destination);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        attachmentPath = destination.toPath();
+        progressBar.setIndeterminate(true);
+        progressBar.setVisibility(View.VISIBLE);
+        save.setEnabled(false);
+        attachmentImport.start(uri, filename);
     }
 
-    private String generateUniqueFilename(String filename) {
-        String extension = filename.substring(filename.lastIndexOf("."));
-        return UUID.randomUUID() + extension;
+    private void cancelImport(EditText attachmentText, ProgressBar progressBar, Button save) {
+        attachmentImport.cancel();
+        progressBar.setVisibility(View.GONE);
+        save.setEnabled(!loading);
+        attachmentText.setText("");
     }
 
     private String getFileName(Uri uri) {
@@ -317,14 +397,4 @@ public class NewTaskActivity extends AppCompatActivity {
         ZoneId zid = tz.toZoneId();
         return LocalDateTime.ofInstant(calendar.toInstant(), zid);
     }
-
-    public static void copy(InputStream in, File dst) throws IOException {
-        try (OutputStream out = new FileOutputStream(dst)) {
-            byte[] buf = new byte[1024];
-            int len;
-            while ((len = in.read(buf)) > 0) {
-                out.write(buf, 0, len);
-            }
-        }
-    }
-}
\ No newline at end of file
+}
@@ -1,5 +1,6 @@
 package com.bartczak.todo;
 
+import android.app.Notification;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
@@ -10,28 +11,50 @@ import androidx.core.app.TaskStackBuilder;
 import androidx.work.Worker;
 import androidx.work.WorkerParameters;
 
+import java.util.List;
+
 public class OneTimeScheduleWorker extends Worker {
 
+    // Task ids start at 1, so the summary never collides with a reminder.
+    private static final int SUMMARY_NOTIFICATION_ID = 0;
+    private static final String REMINDER_GROUP = "com.bartczak.todo.REMINDERS";
+
     private final Context context;
-    private final WorkerParameters workerParameters;
 
     public OneTimeScheduleWorker(Context context, WorkerParameters workerParams) {
         super(context, workerParams);
         this.context = context;
-        this.workerParameters = workerParams;
     }
 
     @Override
     public Result doWork() {
-        String taskTitle = workerParameters.getInputData().getString("task_title");
-        String taskDescription = workerParameters.getInputData().getString("task_description");
+        List<Task> reminders = ReminderScheduler.takeDueReminders(context);
+        boolean grouped = reminders.size() > 1 && ReminderScheduler.getReminderWindowMinutes(context) > 0;
+
+        NotificationManagerCompat notificationManager = NotificationManagerCompat.from(context);
+        for (Task task : reminders) {
+            notificationManager.notify(task.getId(), buildReminder(task, grouped));
+        }
+        if (grouped) {
+            notificationManager.notify(SUMMARY_NOTIFICATION_ID, buildSummary(reminders));
+        }
+
+        ReminderScheduler.armNext(context);
+        return Result.success();
+    }
+
+    // Keyed by task id, so a reminder replaces only an older one for the same task.
+    // Grouped reminders stay silent and let the summary alert once for the batch.
+    private Notification buildReminder(Task task, boolean grouped) {
+        String taskTitle = task.getTitle();
+        String taskDescription = task.getDescription();
 
         Intent resultIntent = new Intent(context, MainActivity.class);
         resultIntent.putExtra("task_title", taskTitle);
 
         TaskStackBuilder stackBuilder = TaskStackBuilder.create(context);
         stackBuilder.addNextIntentWithParentStack(resultIntent);
-        PendingIntent resultPendingIntent = stackBuilder.getPendingIntent(0,
+        PendingIntent resultPendingIntent = stackBuilder.getPendingIntent(task.getId(),
                 PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
 
         NotificationCompat.Builder builder = new NotificationCompat.Builder(context, "todoChannel")
@@ -39,11 +62,39 @@ public class OneTimeScheduleWorker extends Worker {
                 .setContentTitle("Your task " + taskTitle + " is due today!")
                 .setContentText(taskDescription)
                 .setContentIntent(resultPendingIntent)
+                .setAutoCancel(true)
                 .setPriority(NotificationCompat.PRIORITY_DEFAULT);
+        if (grouped) {
+            builder.setGroup(REMINDER_GROUP)
+                    .setGroupAlertBehavior(NotificationCompat.GROUP_ALERT_SUMMARY);
+        }
+        return builder.build();
+    }
 
-        NotificationManagerCompat notificationManager = NotificationManagerCompat.from(context);
-        notificationManager.notify(1, builder.build());
+    private Notification buildSummary(List<Task> reminders) {
+        String title = context.getString(R.string.reminders_summary, reminders.size());
+        NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle()
+                .setBigContentTitle(title);
+        for (Task task : reminders) {
+            style.addLine(task.getTitle());
+        }
 
-        return Result.success();
+        Intent resultIntent = new Intent(context, MainActivity.class);
+        TaskStackBuilder stackBuilder = TaskStackBuilder.create(context);
+        stackBuilder.addNextIntentWithParentStack(resultIntent);
+        PendingIntent resultPendingIntent = stackBuilder.getPendingIntent(SUMMARY_NOTIFICATION_ID,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+
+        return new NotificationCompat.Builder(context, "todoChannel")
+                .setSmallIcon(R.drawable.ic_launcher_foreground)
+                .setContentTitle(title)
+                .setStyle(style)
+                .setNumber(reminders.size())
+                .setContentIntent(resultPendingIntent)
+                .setGroup(REMINDER_GROUP)
+                .setGroupSummary(true)
+                .setAutoCancel(true)
+                .setPriority(NotificationCompat.PRIORITY_DEFAULT)
+                .build();
     }
 }
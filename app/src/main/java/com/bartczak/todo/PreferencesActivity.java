@@ -1,45 +1,95 @@
 package com.bartczak.todo;
 
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.work.Data;
-import androidx.work.OneTimeWorkRequest;
-import androidx.work.WorkManager;
+import androidx.work.WorkInfo;
 
 import android.content.DialogInterface;
+import android.content.Intent;
 import android.os.Bundle;
+import android.view.View;
 import android.widget.Button;
 import android.widget.CheckBox;
 import android.widget.EditText;
 import android.widget.ImageButton;
+import android.widget.Toast;
 
-import java.time.Duration;
-import java.time.LocalDateTime;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
 
 public class PreferencesActivity extends AppCompatActivity {
 
-    private final DatabaseHandler db = new DatabaseHandler(this);
+    // Set on the result once an import added tasks, so the list is reloaded.
+    public static final String EXTRA_TASKS_CHANGED = "tasks_changed";
+
+    private static final String STATE_PENDING_ARCHIVE_WORK = "pending_archive_work";
+    private static final String STATE_TASKS_CHANGED = "tasks_changed";
+
+    private AsyncDatabaseHandler db;
+    // Exports and imports started here whose result has not been shown yet.
+    private final ArrayList<String> pendingArchiveWork = new ArrayList<>();
+    private boolean tasksChanged = false;
+    private ActivityResultLauncher<String> exportLauncher;
+    private ActivityResultLauncher<String[]> importLauncher;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_preferences);
 
+        db = new AsyncDatabaseHandler(this);
+        if (savedInstanceState != null) {
+            pendingArchiveWork.addAll(savedInstanceState.getStringArrayList(STATE_PENDING_ARCHIVE_WORK));
+            if (savedInstanceState.getBoolean(STATE_TASKS_CHANGED)) {
+                setTasksChanged();
+            }
+        }
+
         EditText notificationTime = findViewById(R.id.notification_time_input);
+        EditText reminderWindow = findViewById(R.id.reminder_window_input);
         CheckBox hideCompleted = findViewById(R.id.hide_completed_checkbox);
         EditText filterCategory = findViewById(R.id.category_input);
         ImageButton clearCategory = findViewById(R.id.clear_category_button);
         Button deleteCategory = findViewById(R.id.delete_category_button);
+        Button databaseMetrics = findViewById(R.id.database_metrics_button);
+        Button exportButton = findViewById(R.id.export_button);
+        Button importButton = findViewById(R.id.import_button);
 
         int notificationTimeHours = getSharedPreferences("prefs", MODE_PRIVATE).getInt("notification_time", 1);
         int filterCategoryId = getSharedPreferences("prefs", MODE_PRIVATE).getInt("filter_category", -1);
         if (filterCategoryId != -1) {
-            filterCategory.setText(db.getCategoryById(filterCategoryId).getName());
+            db.getCategoryById(filterCategoryId, category -> {
+                if (category != null) {
+                    filterCategory.setText(category.getName());
+                }
+            });
         }
 
         notificationTime.setText(createTimeString(notificationTimeHours));
+        reminderWindow.setText(createWindowString(ReminderScheduler.getReminderWindowMinutes(this)));
+
+        reminderWindow.setOnClickListener(v -> {
+            final int[] minutes = {0, 5, 15, 30, 60};
+            final String[] options = new String[minutes.length];
+            for (int i = 0; i < minutes.length; i++) {
+                options[i] = createWindowString(minutes[i]);
+            }
+
+            AlertDialog.Builder builder = new AlertDialog.Builder(this);
+            builder.setTitle("Choose reminder grouping");
+            builder.setItems(options, (dialogInterface, i) -> {
+                reminderWindow.setText(options[i]);
+                getSharedPreferences("prefs", MODE_PRIVATE)
+                        .edit()
+                        .putInt("reminder_window", minutes[i]).apply();
+            });
+
+            builder.show();
+        });
 
         notificationTime.setOnClickListener(v -> {
             final int[] time = {1, 2, 4, 8};
@@ -55,7 +105,7 @@ public class PreferencesActivity extends AppCompatActivity {
                             .edit()
                             .putInt("notification_time", time[i]).apply();
                     if (notificationTimeHours != time[i]) {
-                        rescheduleNotifications();
+                        ReminderScheduler.reschedule(PreferencesActivity.this);
                     }
                 }
             });
@@ -71,10 +121,9 @@ public class PreferencesActivity extends AppCompatActivity {
                     .apply();
         });
 
-        filterCategory.setOnClickListener(v -> {
-            final List<Category> categories = db.getAllCategories();
+        filterCategory.setOnClickListener(v -> db.getCategoriesWithTaskCounts(categories -> {
             final String[] options = categories.stream()
-                    .map(Category::getName)
+                    .map(category -> getString(R.string.category_with_count, category.getName(), category.getTaskCount()))
                     .toArray(String[]::new);
 
             AlertDialog.Builder builder = new AlertDialog.Builder(this);
@@ -82,7 +131,7 @@ public class PreferencesActivity extends AppCompatActivity {
             builder.setItems(options, new DialogInterface.OnClickListener() {
                 @Override
                 public void onClick(DialogInterface dialogInterface, int i) {
-                    filterCategory.setText(String.valueOf(options[i]));
+                    filterCategory.setText(categories.get(i).getName());
                     getSharedPreferences("prefs", MODE_PRIVATE)
                             .edit()
                             .putInt("filter_category", categories.get(i).getId())
@@ -91,7 +140,7 @@ public class PreferencesActivity extends AppCompatActivity {
             });
 
             builder.show();
-        });
+        }));
 
         clearCategory.setOnClickListener(v -> {
             filterCategory.setText("");
@@ -101,10 +150,9 @@ public class PreferencesActivity extends AppCompatActivity {
                     .apply();
         });
 
-        deleteCategory.setOnClickListener(v -> {
-            final List<Category> categories = db.getAllCategories();
+        deleteCategory.setOnClickListener(v -> db.getCategoriesWithTaskCounts(categories -> {
             final String[] options = categories.stream()
-                    .map(Category::getName)
+                    .map(category -> getString(R.string.category_with_count, category.getName(), category.getTaskCount()))
                     .toArray(String[]::new);
 
             AlertDialog.Builder builder = new AlertDialog.Builder(this);
@@ -112,7 +160,7 @@ public class PreferencesActivity extends AppCompatActivity {
             builder.setItems(options, new DialogInterface.OnClickListener() {
                 @Override
                 public void onClick(DialogInterface dialogInterface, int i) {
-                    db.deleteCategory(categories.get(i).getId());
+                    db.deleteCategory(categories.get(i).getId(), null);
                     filterCategory.setText("");
                     getSharedPreferences("prefs", MODE_PRIVATE)
                             .edit()
@@ -122,40 +170,78 @@ public class PreferencesActivity extends AppCompatActivity {
             });
 
             builder.show();
+        }));
+
+        // The permissions are persisted so the worker can still use the documents if
+        // this process is restarted before it runs.
+        exportLauncher = registerForActivityResult(new ActivityResultContracts.CreateDocument(), uri -> {
+            if (uri != null) {
+                getContentResolver().takePersistableUriPermission(uri, Intent.FLAG_GRANT_WRITE_URI_PERMISSION);
+                pendingArchiveWork.add(ArchiveWorker.export(this, uri).toString());
+            }
         });
+        importLauncher = registerForActivityResult(new ActivityResultContracts.OpenDocument(), uri -> {
+            if (uri != null) {
+                getContentResolver().takePersistableUriPermission(uri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+                pendingArchiveWork.add(ArchiveWorker.importFrom(this, uri).toString());
+            }
+        });
+        exportButton.setOnClickListener(v -> exportLauncher.launch("todo-" + LocalDate.now() + ".zip"));
+        importButton.setOnClickListener(v -> importLauncher.launch(new String[]{TaskArchive.MIME_TYPE}));
+        // Observed by name rather than by the id of one request, so work started before
+        // the activity was recreated still reports here.
+        ArchiveWorker.getWorkInfos(this).observe(this, this::showArchiveResults);
+
+        if (BuildConfig.DEBUG) {
+            databaseMetrics.setVisibility(View.VISIBLE);
+            databaseMetrics.setOnClickListener(v -> startActivity(new Intent(this, DatabaseMetricsActivity.class)));
+        }
     }
 
-    private void rescheduleNotifications() {
-        List<Task> tasks = db.getAllTasks(true, -1);
-        WorkManager.getInstance(this).cancelAllWork();
-
-        for (Task task : tasks) {
-            if (task.isNotificationScheduled() != null && task.isNotificationScheduled()) {
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putStringArrayList(STATE_PENDING_ARCHIVE_WORK, pendingArchiveWork);
+        outState.putBoolean(STATE_TASKS_CHANGED, tasksChanged);
+    }
 
-                int notificationTimeHours = getSharedPreferences("prefs", MODE_PRIVATE).getInt("notification_time", 1);
-                if (task.getDueDate().minusHours(notificationTimeHours).isBefore(LocalDateTime.now())) {
-                    continue;
+    private void showArchiveResults(List<WorkInfo> infos) {
+        for (WorkInfo info : infos) {
+            if (!info.getState().isFinished() || !pendingArchiveWork.remove(info.getId().toString())) {
+                continue;
+            }
+            boolean isImport = ArchiveWorker.isImport(info);
+            Data output = info.getOutputData();
+            String message;
+            if (info.getState() == WorkInfo.State.SUCCEEDED) {
+                int tasks = output.getInt(ArchiveWorker.KEY_TASKS, 0);
+                message = getString(isImport ? R.string.import_finished : R.string.export_finished, tasks);
+                if (isImport) {
+                    setTasksChanged();
                 }
-                Duration duration = Duration.between(LocalDateTime.now(), task.getDueDate().minusHours(notificationTimeHours));
-
-                OneTimeWorkRequest workRequest = new OneTimeWorkRequest.Builder(OneTimeScheduleWorker.class)
-                        .setInitialDelay(duration.toMillis(), TimeUnit.MILLISECONDS)
-                        .setInputData(new Data.Builder()
-                                .putString("task_title", task.getTitle())
-                                .putString("task_description", task.getDescription())
-                                .build())
-                        .addTag(String.valueOf(task.getId()))
-                        .build();
-                WorkManager.getInstance(this).enqueue(workRequest);
-                task.setNotificationScheduled(true);
+            } else {
+                String error = output.getString(ArchiveWorker.KEY_ERROR);
+                message = getString(isImport ? R.string.import_failed : R.string.export_failed,
+                        error == null ? "" : error);
             }
+            Toast.makeText(this, message, Toast.LENGTH_LONG).show();
         }
     }
 
+    // The result is kept across recreation, a new activity starts without one.
+    private void setTasksChanged() {
+        tasksChanged = true;
+        setResult(RESULT_OK, new Intent().putExtra(EXTRA_TASKS_CHANGED, true));
+    }
+
     private String createTimeString(int hours) {
         return hours == 1 ? "1 hour before" : hours + " hours before";
     }
 
+    private String createWindowString(int minutes) {
+        return minutes == 0 ? "Don't group" : minutes + " minutes";
+    }
+
     private String[] createOptions(int[] time) {
         String[] options = new String[time.length];
         for (int i = 0; i < time.length; i++) {
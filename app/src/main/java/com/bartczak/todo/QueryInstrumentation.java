@@ -0,0 +1,154 @@
+package com.bartczak.todo;
+
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.CancellationSignal;
+import android.util.Log;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+// Times DatabaseHandler operations into OperationMetrics. Operations slower than
+// SLOW_OPERATION_MS are logged, queries together with their query plan. The plan is
+// only asked for then, so fast queries pay for nothing but the timing.
+class QueryInstrumentation {
+
+    private static final String TAG = "TodoDatabase";
+    private static final long SLOW_OPERATION_MS = 50;
+
+    private final OperationMetrics metrics = new OperationMetrics();
+
+    OperationMetrics getMetrics() {
+        return metrics;
+    }
+
+    // The operation is recorded when the returned cursor is closed, so the time spent
+    // stepping through the rows is part of it.
+    Cursor query(SQLiteDatabase db, String operation, String sql, String[] args) {
+        return query(db, operation, sql, args, null);
+    }
+
+    Cursor query(SQLiteDatabase db, String operation, String sql, String[] args, CancellationSignal cancellationSignal) {
+        long start = System.nanoTime();
+        return new MeteredCursor(db.rawQuery(sql, args, cancellationSignal), db, operation, sql, args, start);
+    }
+
+    // For writes and other operations that do not read through a cursor.
+    void record(String operation, long startNanos, long rows) {
+        long nanos = System.nanoTime() - startNanos;
+        metrics.record(operation, nanos, rows, 0);
+        if (isSlow(nanos)) {
+            logSlow(String.format(Locale.ROOT, "%s took %d ms, %d rows",
+                    operation, TimeUnit.NANOSECONDS.toMillis(nanos), rows));
+        }
+    }
+
+    private void onClosed(SQLiteDatabase db, String operation, String sql, String[] args, long nanos, long rows, long bytesRead) {
+        metrics.record(operation, nanos, rows, bytesRead);
+        if (!isSlow(nanos)) {
+            return;
+        }
+        // Arguments can hold what the user searched for, so only the SQL is logged.
+        StringBuilder description = new StringBuilder(String.format(Locale.ROOT, "%s took %d ms, %d rows: %s",
+                operation, TimeUnit.NANOSECONDS.toMillis(nanos), rows, sql));
+        try (Cursor plan = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args)) {
+            int detail = plan.getColumnIndexOrThrow("detail");
+            while (plan.moveToNext()) {
+                description.append("\n  ").append(plan.getString(detail));
+            }
+        } catch (RuntimeException e) {
+            description.append("\n  no query plan: ").append(e.getMessage());
+        }
+        logSlow(description.toString());
+    }
+
+    private static boolean isSlow(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos) >= SLOW_OPERATION_MS;
+    }
+
+    private void logSlow(String description) {
+        Log.w(TAG, description);
+        metrics.recordSlowOperation(description);
+    }
+
+    // Counts what the caller reads: the length of text, the size of blobs and eight
+    // bytes per number, which is close to what SQLite had to hand over.
+    private class MeteredCursor extends CursorWrapper {
+
+        private final SQLiteDatabase db;
+        private final String operation;
+        private final String sql;
+        private final String[] args;
+        private final long start;
+        private long bytesRead = 0;
+
+        MeteredCursor(Cursor cursor, SQLiteDatabase db, String operation, String sql, String[] args, long start) {
+            super(cursor);
+            this.db = db;
+            this.operation = operation;
+            this.sql = sql;
+            this.args = args;
+            this.start = start;
+        }
+
+        @Override
+        public String getString(int columnIndex) {
+            String value = super.getString(columnIndex);
+            if (value != null) {
+                bytesRead += value.length();
+            }
+            return value;
+        }
+
+        @Override
+        public byte[] getBlob(int columnIndex) {
+            byte[] value = super.getBlob(columnIndex);
+            if (value != null) {
+                bytesRead += value.length;
+            }
+            return value;
+        }
+
+        @Override
+        public short getShort(int columnIndex) {
+            bytesRead += Long.BYTES;
+            return super.getShort(columnIndex);
+        }
+
+        @Override
+        public int getInt(int columnIndex) {
+            bytesRead += Long.BYTES;
+            return super.getInt(columnIndex);
+        }
+
+        @Override
+        public long getLong(int columnIndex) {
+            bytesRead += Long.BYTES;
+            return super.getLong(columnIndex);
+        }
+
+        @Override
+        public float getFloat(int columnIndex) {
+            bytesRead += Long.BYTES;
+            return super.getFloat(columnIndex);
+        }
+
+        @Override
+        public double getDouble(int columnIndex) {
+            bytesRead += Long.BYTES;
+            return super.getDouble(columnIndex);
+        }
+
+        @Override
+        public void close() {
+            if (isClosed()) {
+                return;
+            }
+            int rows = getCount();
+            long nanos = System.nanoTime() - start;
+            super.close();
+            onClosed(db, operation, sql, args, nanos, rows, bytesRead);
+        }
+    }
+}
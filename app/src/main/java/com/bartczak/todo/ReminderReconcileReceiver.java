@@ -0,0 +1,20 @@
+package com.bartczak.todo;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+// Reminder delays are computed from local wall-clock times, re-arm them whenever the
+// clock, the time zone or the device itself was reset.
+public class ReminderReconcileReceiver extends BroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        String action = intent.getAction();
+        if (Intent.ACTION_BOOT_COMPLETED.equals(action)
+                || Intent.ACTION_TIMEZONE_CHANGED.equals(action)
+                || Intent.ACTION_TIME_CHANGED.equals(action)) {
+            ReminderScheduler.reschedule(context);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.bartczak.todo;
+
+import android.content.Context;
+
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Reminders are not scheduled one WorkManager request per task. A task with a pending
+// reminder has notification_scheduled set, and a single unique OneTimeScheduleWorker
+// is armed for the earliest of them. Each run fires every reminder due within the
+// reminder window preference and arms the next run. Reminder times are derived from the due date
+// and the lead time preference when the worker runs, so changing either only needs
+// reschedule().
+public final class ReminderScheduler {
+
+    private static final String WORK_NAME = "reminders";
+    private static final int DEFAULT_REMINDER_WINDOW_MINUTES = 5;
+
+    private ReminderScheduler() {
+    }
+
+    // Sets the pending flag of a task about to be saved. Like before, no reminder is
+    // set up once its time has already passed.
+    public static void prepare(Context context, Task task) {
+        LocalDateTime remindAt = task.getDueDate().minusHours(getLeadTimeHours(context));
+        task.setNotificationScheduled(task.isNotificationEnabled() && !task.isDone()
+                && remindAt.isAfter(LocalDateTime.now()));
+    }
+
+    // Runs the worker right away: it fires anything already due and re-arms for the next
+    // reminder. Used after edits and to reconcile after a reboot, a time zone or clock
+    // change or a new lead time.
+    public static void reschedule(Context context) {
+        enqueue(context, Duration.ZERO);
+    }
+
+    // Called from the worker: returns the reminders to show now and clears their flags.
+    // Reminders that already fired but lie ahead again, after the lead time was made
+    // shorter or the clock was set back, are pending once more. A reminder shown by an
+    // earlier run was due before that run's window, so with unchanged preferences it
+    // is never brought back.
+    static synchronized List<Task> takeDueReminders(Context context) {
+        TaskRepository repository = TaskRepository.getInstance(context);
+        LocalDateTime dueBefore = LocalDateTime.now()
+                .plusMinutes(getReminderWindowMinutes(context))
+                .plusHours(getLeadTimeHours(context));
+        List<Integer> missed = repository.getMissedReminderIds(dueBefore);
+        if (!missed.isEmpty()) {
+            repository.setReminderPending(missed, true);
+        }
+
+        List<Task> reminders = repository.getPendingReminders(dueBefore);
+        if (reminders.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<Integer> ids = new ArrayList<>();
+        for (Task task : reminders) {
+            ids.add(task.getId());
+        }
+        repository.setReminderPending(ids, false);
+        return reminders;
+    }
+
+    // Called from the worker once it is done. Replacing the unique work also cancels the
+    // running request, which is harmless at that point.
+    static synchronized void armNext(Context context) {
+        LocalDateTime nextDueDate = TaskRepository.getInstance(context).getNextReminderDueDate();
+        if (nextDueDate == null) {
+            WorkManager.getInstance(context).cancelUniqueWork(WORK_NAME);
+            return;
+        }
+
+        Duration delay = Duration.between(LocalDateTime.now(), nextDueDate.minusHours(getLeadTimeHours(context)));
+        enqueue(context, delay.isNegative() ? Duration.ZERO : delay);
+    }
+
+    private static void enqueue(Context context, Duration delay) {
+        OneTimeWorkRequest workRequest = new OneTimeWorkRequest.Builder(OneTimeScheduleWorker.class)
+                .setInitialDelay(delay.toMillis(), TimeUnit.MILLISECONDS)
+                .build();
+        WorkManager.getInstance(context).enqueueUniqueWork(WORK_NAME, ExistingWorkPolicy.REPLACE, workRequest);
+    }
+
+    // Reminders due this close together are fired in one run and, when there are
+    // several, shown as one group. 0 turns grouping off.
+    public static int getReminderWindowMinutes(Context context) {
+        return context.getSharedPreferences("prefs", Context.MODE_PRIVATE)
+                .getInt("reminder_window", DEFAULT_REMINDER_WINDOW_MINUTES);
+    }
+
+    private static int getLeadTimeHours(Context context) {
+        return context.getSharedPreferences("prefs", Context.MODE_PRIVATE).getInt("notification_time", 1);
+    }
+}
@@ -0,0 +1,87 @@
+package com.bartczak.todo;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import android.os.Bundle;
+import android.widget.TextView;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.WeekFields;
+import java.util.Locale;
+
+// Overview of overdue, due and completed tasks. Everything comes from the counters
+// DatabaseHandler keeps up to date, so opening it costs the same for any number of tasks.
+public class StatisticsActivity extends AppCompatActivity {
+
+    private static final int MAX_BAR_LENGTH = 20;
+
+    private final DateTimeFormatter dayFormatter = DateTimeFormatter.ofPattern("EEE dd-MM");
+
+    private AsyncDatabaseHandler db;
+    private TextView overdue;
+    private TextView dueToday;
+    private TextView completedThisWeek;
+    private TextView createdThisWeek;
+    private TextView openOfTotal;
+    private TextView completedByDay;
+    private TextView categories;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_statistics);
+
+        db = new AsyncDatabaseHandler(this);
+        overdue = findViewById(R.id.overdue_text);
+        dueToday = findViewById(R.id.due_today_text);
+        completedThisWeek = findViewById(R.id.completed_this_week_text);
+        createdThisWeek = findViewById(R.id.created_this_week_text);
+        openOfTotal = findViewById(R.id.open_of_total_text);
+        completedByDay = findViewById(R.id.completed_by_day_text);
+        categories = findViewById(R.id.categories_text);
+        TextView completedLastDays = findViewById(R.id.completed_last_days_title);
+        completedLastDays.setText(getString(R.string.completed_last_days, TaskStatistics.DAYS));
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        db.getTaskStatistics(LocalDateTime.now(), WeekFields.of(Locale.getDefault()).getFirstDayOfWeek(),
+                this::showStatistics);
+    }
+
+    private void showStatistics(TaskStatistics statistics) {
+        overdue.setText(getString(R.string.overdue_count, statistics.getOverdue()));
+        dueToday.setText(getString(R.string.due_today_count, statistics.getDueToday()));
+        completedThisWeek.setText(getString(R.string.completed_this_week_count, statistics.getCompletedThisWeek()));
+        createdThisWeek.setText(getString(R.string.created_this_week_count, statistics.getCreatedThisWeek()));
+        openOfTotal.setText(getString(R.string.open_of_total, statistics.getOpen(), statistics.getTotal()));
+
+        int[] completed = statistics.getCompletedByDay();
+        int max = 1;
+        for (int count : completed) {
+            max = Math.max(max, count);
+        }
+        StringBuilder days = new StringBuilder();
+        for (int i = 0; i < completed.length; i++) {
+            LocalDate day = statistics.getToday().minusDays(completed.length - 1 - i);
+            int length = (completed[i] * MAX_BAR_LENGTH + max - 1) / max;
+            days.append(dayFormatter.format(day)).append(' ');
+            for (int j = 0; j < length; j++) {
+                days.append('#');
+            }
+            days.append(' ').append(completed[i]).append('\n');
+        }
+        completedByDay.setText(days);
+
+        StringBuilder byCategory = new StringBuilder();
+        for (TaskStatistics.CategoryCount category : statistics.getCategories()) {
+            String name = category.getName() == null ? getString(R.string.no_category) : category.getName();
+            byCategory.append(getString(R.string.category_open_of_total, name, category.getOpen(), category.getTotal()))
+                    .append('\n');
+        }
+        categories.setText(byCategory);
+    }
+}
@@ -1,107 +0,0 @@
-package com.bartczak.todo;
-
-import java.io.Serializable;
-import java.time.LocalDateTime;
-
-public class Task implements Serializable {
-
-    private int id;
-    private String title;
-    private String description;
-    private String attachmentPath;
-    private LocalDateTime createdAt;
-    private LocalDateTime dueDate;
-    private LocalDateTime doneAt;
-    private Boolean done;
-    private Boolean notificationEnabled;
-    private Boolean notificationScheduled;
-    private int categoryId;
-
-    public int getId() {
-        return id;
-    }
-
-    public void setId(int id) {
-        this.id = id;
-    }
-
-    public String getTitle() {
-        return title;
-    }
-
-    public void setTitle(String title) {
-        this.title = title;
-    }
-
-    public String getDescription() {
-        return description;
-    }
-
-    public void setDescription(String description) {
-        this.description = description;
-    }
-
-    public String getAttachmentPath() {
-        return attachmentPath;
-    }
-
-    public void setAttachmentPath(String attachmentPath) {
-        this.attachmentPath = attachmentPath;
-    }
-
-    public LocalDateTime getCreatedAt() {
-        return createdAt;
-    }
-
-    public void setCreatedAt(LocalDateTime createdAt) {
-        this.createdAt = createdAt;
-    }
-
-    public LocalDateTime getDoneAt() {
-        return doneAt;
-    }
-
-    public void setDoneAt(LocalDateTime doneAt) {
-        this.doneAt = doneAt;
-    }
-
-    public Boolean isDone() {
-        return done;
-    }
-
-    public void setDone(Boolean done) {
-        this.done = done;
-    }
-
-    public Boolean isNotificationEnabled() {
-        return notificationEnabled;
-    }
-
-    public void setNotificationEnabled(Boolean notificationEnabled) {
-        this.notificationEnabled = notificationEnabled;
-    }
-
-    public LocalDateTime getDueDate() {
-        return dueDate;
-    }
-
-    public void setDueDate(LocalDateTime dueDate) {
-        this.dueDate = dueDate;
-    }
-
-    public Boolean isNotificationScheduled() {
-        return notificationScheduled;
-    }
-
-    public void setNotificationScheduled(Boolean notificationScheduled) {
-        this.notificationScheduled = notificationScheduled;
-    }
-
-    public int getCategoryId() {
-        return categoryId;
-    }
-
-    public void setCategoryId(int categoryId) {
-        this.categoryId = categoryId;
-    }
-}
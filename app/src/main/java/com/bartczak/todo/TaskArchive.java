@@ -0,0 +1,555 @@
+package com.bartczak.todo;
+
+import android.content.Context;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.JsonWriter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+// Backup of every task, category and referenced attachment as one zip: manifest.json,
+// categories.jsonl and attachments.jsonl (one JSON object per line), the attachment
+// files as attachments/<hash> in the order they are listed, and tasks.jsonl last.
+// Tasks and attachments are read PAGE_SIZE at a time and files are streamed, so memory
+// use does not grow with the number of tasks or the size of the files. An import keeps
+// the set of listed attachment hashes, bounded by the number of attachments.
+// An import reads the archive twice. The first pass only validates, so a malformed
+// archive leaves the database as it was. The second inserts categories, reusing local
+// ones of the same name, then attachments and finally tasks in transactions of
+// PAGE_SIZE, all under new ids.
+public class TaskArchive {
+
+    public interface Source {
+        InputStream open() throws IOException;
+    }
+
+    // The archive is not one this class wrote; the message says where it went wrong.
+    public static class FormatException extends IOException {
+
+        FormatException(String message) {
+            super(message);
+        }
+    }
+
+    public static final String MIME_TYPE = "application/zip";
+
+    private static final int FORMAT_VERSION = 1;
+    private static final int PAGE_SIZE = 500;
+
+    private static final String MANIFEST = "manifest.json";
+    private static final String CATEGORIES = "categories.jsonl";
+    private static final String ATTACHMENTS = "attachments.jsonl";
+    private static final String ATTACHMENT_FILE_PREFIX = "attachments/";
+    private static final String TASKS = "tasks.jsonl";
+
+    // Entries have to come in this order, only the attachment files may be none or many.
+    private static final int STAGE_MANIFEST = 0;
+    private static final int STAGE_CATEGORIES = 1;
+    private static final int STAGE_ATTACHMENTS = 2;
+    private static final int STAGE_ATTACHMENT_FILES = 3;
+    private static final int STAGE_TASKS = 4;
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+
+    private final Context context;
+    private final DatabaseHandler db;
+    private final AttachmentStore store;
+
+    public TaskArchive(Context context) {
+        this(context, DatabaseHandler.getInstance(context), AttachmentStore.getInstance(context));
+    }
+
+    // Package-private so tests can use a database and attachment directory of their own.
+    TaskArchive(Context context, DatabaseHandler db, AttachmentStore store) {
+        this.context = context.getApplicationContext();
+        this.db = db;
+        this.store = store;
+    }
+
+    // Writes the archive to out, which is finished but not closed. Returns the number
+    // of tasks written.
+    public int export(OutputStream out) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(zip, StandardCharsets.UTF_8));
+
+        zip.putNextEntry(new ZipEntry(MANIFEST));
+        JsonWriter manifest = new JsonWriter(writer);
+        manifest.beginObject();
+        manifest.name("format").value(FORMAT_VERSION);
+        manifest.name("exported_at").value(DATE_FORMAT.format(LocalDateTime.now()));
+        manifest.endObject();
+        writer.write('\n');
+        closeEntry(zip, writer);
+
+        zip.putNextEntry(new ZipEntry(CATEGORIES));
+        for (Category category : db.getAllCategories()) {
+            JsonWriter json = new JsonWriter(writer);
+            json.beginObject();
+            json.name("id").value(category.getId());
+            if (category.getName() != null) {
+                json.name("name").value(category.getName());
+            }
+            json.endObject();
+            writer.write('\n');
+        }
+        closeEntry(zip, writer);
+
+        // Blobs missing on disk are left out of both the list and the files.
+        zip.putNextEntry(new ZipEntry(ATTACHMENTS));
+        for (List<Attachment> page = db.getReferencedAttachmentsAfter(null, PAGE_SIZE); !page.isEmpty();
+             page = db.getReferencedAttachmentsAfter(last(page).getHash(), PAGE_SIZE)) {
+            for (Attachment attachment : page) {
+                if (!store.resolve(attachment.getHash()).isFile()) {
+                    continue;
+                }
+                JsonWriter json = new JsonWriter(writer);
+                json.beginObject();
+                json.name("hash").value(attachment.getHash());
+                json.name("name").value(attachment.getName());
+                json.name("size").value(attachment.getSize());
+                json.name("mime_type").value(attachment.getMimeType());
+                json.endObject();
+                writer.write('\n');
+            }
+        }
+        closeEntry(zip, writer);
+
+        for (List<Attachment> page = db.getReferencedAttachmentsAfter(null, PAGE_SIZE); !page.isEmpty();
+             page = db.getReferencedAttachmentsAfter(last(page).getHash(), PAGE_SIZE)) {
+            for (Attachment attachment : page) {
+                File file = store.resolve(attachment.getHash());
+                if (!file.isFile()) {
+                    continue;
+                }
+                zip.putNextEntry(new ZipEntry(ATTACHMENT_FILE_PREFIX + attachment.getHash()));
+                try (FileInputStream in = new FileInputStream(file)) {
+                    ChannelCopier.copy(in.getChannel(), Channels.newChannel(zip), file.length(), null);
+                }
+                zip.closeEntry();
+            }
+        }
+
+        int count = 0;
+        zip.putNextEntry(new ZipEntry(TASKS));
+        for (List<Task> page = db.getTasksAfterId(0, PAGE_SIZE); !page.isEmpty();
+             page = db.getTasksAfterId(last(page).getId(), PAGE_SIZE)) {
+            for (Task task : page) {
+                writeTask(new JsonWriter(writer), task);
+                writer.write('\n');
+            }
+            count += page.size();
+        }
+        closeEntry(zip, writer);
+        zip.finish();
+        return count;
+    }
+
+    // Returns the number of tasks imported. A failure during the second pass, such as
+    // a full disk, keeps the batches committed before it.
+    public int importFrom(Source source) throws IOException {
+        try (InputStream in = source.open()) {
+            read(in, false);
+        }
+        try (InputStream in = source.open()) {
+            return read(in, true);
+        }
+    }
+
+    private static void writeTask(JsonWriter json, Task task) throws IOException {
+        json.beginObject();
+        json.name("id").value(task.getId());
+        if (task.getTitle() != null) {
+            json.name("title").value(task.getTitle());
+        }
+        if (task.getDescription() != null) {
+            json.name("description").value(task.getDescription());
+        }
+        // Legacy file paths are not in the store and so not exported, the task goes
+        // without its attachment.
+        if (isHash(task.getAttachment())) {
+            json.name("attachment").value(task.getAttachment());
+        }
+        json.name("created_at").value(DATE_FORMAT.format(task.getCreatedAt()));
+        json.name("due_date").value(DATE_FORMAT.format(task.getDueDate()));
+        if (task.getDoneAt() != null) {
+            json.name("done_at").value(DATE_FORMAT.format(task.getDoneAt()));
+        }
+        json.name("done").value(task.isDone());
+        json.name("notification_enabled").value(task.isNotificationEnabled());
+        json.name("category_id").value(task.getCategoryId());
+        json.endObject();
+    }
+
+    // Validates the whole archive, and with apply also imports it. Returns the number
+    // of tasks.
+    private int read(InputStream in, boolean apply) throws IOException {
+        ZipInputStream zip = new ZipInputStream(new BufferedInputStream(in));
+        int stage = -1;
+        boolean formatChecked = false;
+        // Archive category id to local id. Categories are few.
+        Map<Integer, Integer> categoryIds = new HashMap<>();
+        Map<String, Integer> localCategories = new HashMap<>();
+        if (apply) {
+            for (Category category : db.getAllCategories()) {
+                localCategories.put(category.getName(), category.getId());
+            }
+        }
+        // The attachment files have to match attachments.jsonl one to one and in order,
+        // which is checked by comparing digests of both hash sequences.
+        MessageDigest listedHashes = AttachmentStore.newDigest();
+        MessageDigest fileHashes = AttachmentStore.newDigest();
+        // The listed hashes, which tasks may refer to, read before them. One entry per
+        // attachment, usually far fewer than the tasks.
+        Set<String> attachmentHashes = new HashSet<>();
+        long now = System.currentTimeMillis();
+        List<Task> batch = new ArrayList<>();
+        int count = 0;
+
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            String name = entry.getName();
+            int entryStage = stageOf(name);
+            boolean expected = entryStage == stage + 1
+                    || (entryStage == STAGE_ATTACHMENT_FILES && stage == STAGE_ATTACHMENT_FILES)
+                    || (entryStage == STAGE_TASKS && stage == STAGE_ATTACHMENTS);
+            if (!expected) {
+                throw new FormatException(stage < 0 ? "Not a task archive" : "Unexpected entry " + name);
+            }
+            if (stage == STAGE_MANIFEST && !formatChecked) {
+                throw new FormatException("Missing archive format");
+            }
+            if (entryStage == STAGE_TASKS
+                    && !MessageDigest.isEqual(listedHashes.digest(), fileHashes.digest())) {
+                throw new FormatException("The attachment files do not match " + ATTACHMENTS);
+            }
+            stage = entryStage;
+
+            if (stage == STAGE_ATTACHMENT_FILES) {
+                String hash = name.substring(ATTACHMENT_FILE_PREFIX.length());
+                readAttachmentFile(zip, hash, apply);
+                fileHashes.update(hash.getBytes(StandardCharsets.US_ASCII));
+                continue;
+            }
+
+            // Not closed, that would close the zip. Reading ahead stops at the end of the entry.
+            BufferedReader reader = new BufferedReader(new InputStreamReader(zip, StandardCharsets.UTF_8));
+            String text;
+            int lineNumber = 0;
+            while ((text = reader.readLine()) != null) {
+                lineNumber++;
+                if (text.isEmpty()) {
+                    continue;
+                }
+                Line line = Line.parse(name, lineNumber, text);
+                switch (stage) {
+                    case STAGE_MANIFEST:
+                        long format = line.getLong("format");
+                        if (format != FORMAT_VERSION) {
+                            throw new FormatException("Unsupported archive format " + format);
+                        }
+                        formatChecked = true;
+                        break;
+                    case STAGE_CATEGORIES:
+                        readCategory(line, categoryIds, localCategories, apply);
+                        break;
+                    case STAGE_ATTACHMENTS:
+                        Attachment attachment = readAttachment(line);
+                        listedHashes.update(attachment.getHash().getBytes(StandardCharsets.US_ASCII));
+                        attachmentHashes.add(attachment.getHash());
+                        if (apply) {
+                            db.addAttachment(attachment, now);
+                        }
+                        break;
+                    default:
+                        Task task = readTask(line, categoryIds);
+                        count++;
+                        if (apply) {
+                            batch.add(prepare(task, attachmentHashes));
+                            if (batch.size() == PAGE_SIZE) {
+                                db.addTasks(batch);
+                                batch.clear();
+                            }
+                        }
+                        break;
+                }
+            }
+        }
+        if (stage != STAGE_TASKS) {
+            throw new FormatException(stage < 0 ? "Not a task archive" : "Missing " + TASKS);
+        }
+        if (!batch.isEmpty()) {
+            db.addTasks(batch);
+        }
+        return count;
+    }
+
+    private static int stageOf(String name) throws FormatException {
+        switch (name) {
+            case MANIFEST:
+                return STAGE_MANIFEST;
+            case CATEGORIES:
+                return STAGE_CATEGORIES;
+            case ATTACHMENTS:
+                return STAGE_ATTACHMENTS;
+            case TASKS:
+                return STAGE_TASKS;
+            default:
+                if (name.startsWith(ATTACHMENT_FILE_PREFIX) && isHash(name.substring(ATTACHMENT_FILE_PREFIX.length()))) {
+                    return STAGE_ATTACHMENT_FILES;
+                }
+                throw new FormatException("Unexpected entry " + name);
+        }
+    }
+
+    private void readCategory(Line line, Map<Integer, Integer> categoryIds, Map<String, Integer> localCategories,
+                              boolean apply) throws FormatException {
+        int id = line.getInt("id");
+        String name = line.getOptionalString("name");
+        if (categoryIds.containsKey(id)) {
+            throw line.error("duplicate category id " + id);
+        }
+        Integer localId = id;
+        if (apply) {
+            localId = localCategories.get(name);
+            if (localId == null) {
+                Category category = new Category();
+                category.setName(name);
+                db.addCategory(category);
+                localId = category.getId();
+                localCategories.put(name, localId);
+            }
+        }
+        categoryIds.put(id, localId);
+    }
+
+    private static Attachment readAttachment(Line line) throws FormatException {
+        Attachment attachment = new Attachment();
+        attachment.setHash(line.getString("hash"));
+        if (!isHash(attachment.getHash())) {
+            throw line.error("invalid hash");
+        }
+        attachment.setName(line.getOptionalString("name"));
+        attachment.setSize(line.getLong("size"));
+        attachment.setMimeType(line.getOptionalString("mime_type"));
+        return attachment;
+    }
+
+    // Files are hashed on the way in and must match the name they were listed under.
+    private void readAttachmentFile(ZipInputStream zip, String hash, boolean apply) throws IOException {
+        MessageDigest digest = AttachmentStore.newDigest();
+        File temp = apply ? store.createTempFile() : null;
+        boolean committed = false;
+        try {
+            try (OutputStream out = apply ? new FileOutputStream(temp) : new DiscardingOutputStream()) {
+                ChannelCopier.copy(Channels.newChannel(zip), Channels.newChannel(out), -1, digest, null);
+            }
+            if (!AttachmentStore.toHex(digest.digest()).equals(hash)) {
+                throw new FormatException("Attachment " + hash + " is damaged");
+            }
+            if (apply) {
+                Attachment attachment = new Attachment();
+                attachment.setHash(hash);
+                store.commit(temp, attachment);
+                committed = true;
+            }
+        } finally {
+            if (temp != null && !committed) {
+                temp.delete();
+            }
+        }
+    }
+
+    // Tasks of categories the archive does not list, such as deleted ones, lose their
+    // category, as do attachments that were not exported with them.
+    private Task readTask(Line line, Map<Integer, Integer> categoryIds) throws FormatException {
+        Task task = new Task();
+        task.setTitle(line.getOptionalString("title"));
+        task.setDescription(line.getOptionalString("description"));
+        task.setCreatedAt(line.getDate("created_at"));
+        task.setDueDate(line.getDate("due_date"));
+        task.setDoneAt(line.getOptionalDate("done_at"));
+        task.setDone(line.getBoolean("done"));
+        task.setNotificationEnabled(line.getBoolean("notification_enabled"));
+        Integer categoryId = categoryIds.get(line.getInt("category_id"));
+        task.setCategoryId(categoryId == null ? -1 : categoryId);
+        String attachment = line.getOptionalString("attachment");
+        if (attachment != null && !isHash(attachment)) {
+            throw line.error("invalid attachment");
+        }
+        task.setAttachment(attachment);
+        return task;
+    }
+
+    // Only called while applying, once the attachments are stored. Reminders are set up
+    // afresh for this device rather than taken over from the archive.
+    private Task prepare(Task task, Set<String> attachmentHashes) {
+        if (task.getAttachment() != null && !attachmentHashes.contains(task.getAttachment())) {
+            task.setAttachment(null);
+        }
+        ReminderScheduler.prepare(context, task);
+        return task;
+    }
+
+    private static boolean isHash(String value) {
+        if (value == null || value.length() != 64) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void closeEntry(ZipOutputStream zip, Writer writer) throws IOException {
+        writer.flush();
+        zip.closeEntry();
+    }
+
+    private static <T> T last(List<T> list) {
+        return list.get(list.size() - 1);
+    }
+
+    // One JSON object of a .jsonl entry. Numbers are kept as text until asked for.
+    private static class Line {
+
+        private final String entry;
+        private final int number;
+        private final Map<String, Object> values = new HashMap<>();
+
+        private Line(String entry, int number) {
+            this.entry = entry;
+            this.number = number;
+        }
+
+        static Line parse(String entry, int number, String text) throws FormatException {
+            Line line = new Line(entry, number);
+            try (JsonReader json = new JsonReader(new StringReader(text))) {
+                json.beginObject();
+                while (json.hasNext()) {
+                    String name = json.nextName();
+                    JsonToken token = json.peek();
+                    if (token == JsonToken.BOOLEAN) {
+                        line.values.put(name, json.nextBoolean());
+                    } else if (token == JsonToken.STRING || token == JsonToken.NUMBER) {
+                        line.values.put(name, json.nextString());
+                    } else if (token == JsonToken.NULL) {
+                        json.nextNull();
+                    } else {
+                        json.skipValue();
+                    }
+                }
+                json.endObject();
+                if (json.peek() != JsonToken.END_DOCUMENT) {
+                    throw line.error("more than one object");
+                }
+            } catch (FormatException e) {
+                throw e;
+            } catch (IOException | IllegalStateException e) {
+                throw line.error(e.getMessage());
+            }
+            return line;
+        }
+
+        String getString(String name) throws FormatException {
+            String value = getOptionalString(name);
+            if (value == null) {
+                throw error("missing " + name);
+            }
+            return value;
+        }
+
+        String getOptionalString(String name) throws FormatException {
+            Object value = values.get(name);
+            if (value != null && !(value instanceof String)) {
+                throw error(name + " is not a string");
+            }
+            return (String) value;
+        }
+
+        long getLong(String name) throws FormatException {
+            try {
+                return Long.parseLong(getString(name));
+            } catch (NumberFormatException e) {
+                throw error(name + " is not a whole number");
+            }
+        }
+
+        int getInt(String name) throws FormatException {
+            long value = getLong(name);
+            if (value != (int) value) {
+                throw error(name + " is out of range");
+            }
+            return (int) value;
+        }
+
+        boolean getBoolean(String name) throws FormatException {
+            Object value = values.get(name);
+            if (!(value instanceof Boolean)) {
+                throw error(value == null ? "missing " + name : name + " is not true or false");
+            }
+            return (Boolean) value;
+        }
+
+        LocalDateTime getDate(String name) throws FormatException {
+            return parseDate(name, getString(name));
+        }
+
+        LocalDateTime getOptionalDate(String name) throws FormatException {
+            String value = getOptionalString(name);
+            return value == null ? null : parseDate(name, value);
+        }
+
+        private LocalDateTime parseDate(String name, String value) throws FormatException {
+            try {
+                return LocalDateTime.parse(value, DATE_FORMAT);
+            } catch (DateTimeParseException e) {
+                throw error(name + " is not a date");
+            }
+        }
+
+        FormatException error(String message) {
+            return new FormatException(entry + " line " + number + ": " + message);
+        }
+    }
+
+    private static class DiscardingOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
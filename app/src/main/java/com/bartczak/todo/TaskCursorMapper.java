@@ -0,0 +1,67 @@
+package com.bartczak.todo;
+
+import android.database.Cursor;
+
+// Reads tasks from a cursor by column name. Indexes are looked up once per cursor, not
+// per row, and a missing column fails loudly instead of shifting every field after it.
+// Cursors over TaskQuery.SUMMARY_COLUMNS produce summary tasks, the category name is
+// read where the query joined it in.
+class TaskCursorMapper {
+
+    private final Cursor cursor;
+    private final int id;
+    private final int title;
+    private final int description;
+    private final int attachment;
+    private final int hasAttachment;
+    private final int createdAt;
+    private final int dueDate;
+    private final int doneAt;
+    private final int done;
+    private final int notificationEnabled;
+    private final int notificationScheduled;
+    private final int categoryId;
+    private final int categoryName;
+
+    TaskCursorMapper(Cursor cursor) {
+        this.cursor = cursor;
+        id = cursor.getColumnIndexOrThrow(TaskQuery.KEY_ID);
+        title = cursor.getColumnIndexOrThrow(TaskQuery.KEY_TITLE);
+        description = cursor.getColumnIndexOrThrow(TaskQuery.KEY_DESCRIPTION);
+        hasAttachment = cursor.getColumnIndex(TaskQuery.KEY_HAS_ATTACHMENT);
+        attachment = cursor.getColumnIndexOrThrow(TaskQuery.KEY_ATTACHMENT);
+        createdAt = cursor.getColumnIndexOrThrow(TaskQuery.KEY_CREATED_AT);
+        dueDate = cursor.getColumnIndexOrThrow(TaskQuery.KEY_DUE_DATE);
+        doneAt = cursor.getColumnIndexOrThrow(TaskQuery.KEY_DONE_AT);
+        done = cursor.getColumnIndexOrThrow(TaskQuery.KEY_DONE);
+        notificationEnabled = cursor.getColumnIndexOrThrow(TaskQuery.KEY_NOTIFICATION_ENABLED);
+        notificationScheduled = cursor.getColumnIndexOrThrow(TaskQuery.KEY_NOTIFICATION_SCHEDULED);
+        categoryId = cursor.getColumnIndexOrThrow(TaskQuery.KEY_CATEGORY_ID_FK);
+        categoryName = cursor.getColumnIndex(TaskQuery.KEY_TASK_CATEGORY_NAME);
+    }
+
+    Task read() {
+        Task task = new Task();
+        task.setId(cursor.getInt(id));
+        task.setTitle(cursor.getString(title));
+        task.setDescription(cursor.getString(description));
+        task.setAttachment(cursor.getString(attachment));
+        if (hasAttachment != -1) {
+            task.setHasAttachment(cursor.getInt(hasAttachment) == 1);
+            task.setSummary(true);
+        }
+        task.setCreatedAt(TaskDateCodec.decode(cursor.getLong(createdAt)));
+        task.setDueDate(TaskDateCodec.decode(cursor.getLong(dueDate)));
+        if (!cursor.isNull(doneAt)) {
+            task.setDoneAt(TaskDateCodec.decode(cursor.getLong(doneAt)));
+        }
+        task.setDone(cursor.getInt(done) == 1);
+        task.setNotificationEnabled(cursor.getInt(notificationEnabled) == 1);
+        task.setNotificationScheduled(cursor.getInt(notificationScheduled) == 1);
+        task.setCategoryId(cursor.getInt(categoryId));
+        if (categoryName != -1) {
+            task.setCategoryName(cursor.getString(categoryName));
+        }
+        return task;
+    }
+}
@@ -0,0 +1,36 @@
+package com.bartczak.todo;
+
+import androidx.recyclerview.widget.DiffUtil;
+
+import java.util.List;
+
+public class TaskDiffCallback extends DiffUtil.Callback {
+
+    private final List<Task> oldTasks;
+    private final List<Task> newTasks;
+
+    public TaskDiffCallback(List<Task> oldTasks, List<Task> newTasks) {
+        this.oldTasks = oldTasks;
+        this.newTasks = newTasks;
+    }
+
+    @Override
+    public int getOldListSize() {
+        return oldTasks.size();
+    }
+
+    @Override
+    public int getNewListSize() {
+        return newTasks.size();
+    }
+
+    @Override
+    public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+        return oldTasks.get(oldItemPosition).getId() == newTasks.get(newItemPosition).getId();
+    }
+
+    @Override
+    public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+        return oldTasks.get(oldItemPosition).equals(newTasks.get(newItemPosition));
+    }
+}
@@ -0,0 +1,313 @@
+package com.bartczak.todo;
+
+import android.content.Context;
+import android.os.CancellationSignal;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+// Write-through cache in front of DatabaseHandler. While the tasks table is small
+// enough to keep in memory, list queries without search text (sorting, category and
+// completion filters, paging) are answered from a TaskIndex instead of SQLite.
+// List queries return summary tasks (see Task.toSummary()), lookups by id and
+// reminder queries return complete ones.
+// Every write goes to the database first and then patches the index, so the cache
+// never holds rows that have not been committed. The index does not hold category
+// names, rows served from it are named from CategoryRepository.
+public class TaskRepository {
+
+    static final int MAX_CACHED_TASKS = 5000;
+
+    private static TaskRepository instance;
+
+    private final DatabaseHandler db;
+    private final CategoryRepository categories;
+    private TaskIndex index;
+    private boolean tooLarge = false;
+    private TaskFilter lastSearch;
+    private List<Task> lastSearchResults;
+    private int writeCount = 0;
+
+    public static synchronized TaskRepository getInstance(Context context) {
+        if (instance == null) {
+            instance = new TaskRepository(DatabaseHandler.getInstance(context), CategoryRepository.getInstance(context));
+        }
+        return instance;
+    }
+
+    TaskRepository(DatabaseHandler db, CategoryRepository categories) {
+        this.db = db;
+        this.categories = categories;
+    }
+
+    public List<Task> getTasks(TaskFilter filter) {
+        return getTasks(filter, null);
+    }
+
+    // Text searches are not served from the index, but the last result is kept: while
+    // the user keeps typing the same words each new query only narrows the previous
+    // one, so it is filtered in memory instead of running the FTS query again. The
+    // kept result holds full descriptions so narrowing matches what FTS would.
+    public List<Task> getTasks(TaskFilter filter, CancellationSignal cancellationSignal) {
+        if (!filter.hasText()) {
+            loadIndex();
+            synchronized (this) {
+                if (index != null) {
+                    return withCategoryNames(index.query(filter, null, 0));
+                }
+            }
+            return db.getTaskSummaries(filter);
+        }
+
+        final List<Task> previousResults;
+        final int version;
+        synchronized (this) {
+            version = writeCount;
+            previousResults = lastSearch != null && filter.narrows(lastSearch) ? lastSearchResults : null;
+        }
+
+        List<Task> tasks = previousResults == null
+                ? db.getTasks(filter, cancellationSignal)
+                : narrow(previousResults, filter, cancellationSignal);
+
+        synchronized (this) {
+            if (version == writeCount) {
+                lastSearch = filter;
+                lastSearchResults = tasks;
+            }
+        }
+        return summariesOf(tasks);
+    }
+
+    public TaskPage getTasksPage(TaskFilter filter, TaskPageKey after, int pageSize) {
+        if (!filter.hasText()) {
+            loadIndex();
+            synchronized (this) {
+                if (index != null) {
+                    return TaskPage.of(withCategoryNames(index.query(filter, after, pageSize)), pageSize);
+                }
+            }
+        }
+        return db.getTasksPage(filter, after, pageSize);
+    }
+
+    public Task getTask(int id) {
+        return db.getTask(id);
+    }
+
+    public List<Task> getTasksByIds(List<Integer> ids) {
+        return db.getTasksByIds(ids);
+    }
+
+    public void addTask(Task task) {
+        db.addTask(task);
+        invalidateSearch();
+        cache(Collections.singletonList(task));
+    }
+
+    public void addTasks(List<Task> tasks) {
+        db.addTasks(tasks);
+        invalidateSearch();
+        cache(tasks);
+    }
+
+    public void updateTask(Task task) {
+        db.updateTask(task);
+        invalidateSearch();
+        cache(Collections.singletonList(task));
+    }
+
+    public void updateTasks(List<Task> tasks) {
+        db.updateTasks(tasks);
+        invalidateSearch();
+        cache(tasks);
+    }
+
+    public void deleteTask(int id) {
+        db.deleteTask(id);
+        invalidateSearch();
+        evict(Collections.singletonList(id));
+    }
+
+    public void deleteTasks(List<Integer> ids) {
+        db.deleteTasks(ids);
+        invalidateSearch();
+        evict(ids);
+    }
+
+    // done_at and notification_scheduled are computed by the UPDATE itself, so the
+    // affected rows are read back rather than patched by hand.
+    public void setDone(List<Integer> ids, boolean done) {
+        db.setDone(ids, done);
+        invalidateSearch();
+        refresh(ids);
+    }
+
+    public void setCategory(List<Integer> ids, int categoryId) {
+        db.setCategory(ids, categoryId);
+        invalidateSearch();
+        refresh(ids);
+    }
+
+    public void setAttachment(int id, String attachment) {
+        db.setTaskAttachment(id, attachment);
+        invalidateSearch();
+        refresh(Collections.singletonList(id));
+    }
+
+    public void setReminderPending(List<Integer> ids, boolean pending) {
+        db.setReminderPending(ids, pending);
+        invalidateSearch();
+        refresh(ids);
+    }
+
+    public List<Task> getPendingReminders(LocalDateTime dueBefore) {
+        return db.getPendingReminders(dueBefore);
+    }
+
+    public LocalDateTime getNextReminderDueDate() {
+        return db.getNextReminderDueDate();
+    }
+
+    public List<Integer> getMissedReminderIds(LocalDateTime dueAfter) {
+        return db.getMissedReminderIds(dueAfter);
+    }
+
+    public Map<Integer, Integer> getTaskCountsByCategory() {
+        loadIndex();
+        synchronized (this) {
+            if (index != null) {
+                return index.countByCategory();
+            }
+        }
+        return db.getTaskCountsByCategory();
+    }
+
+    // The kept search results carry the name of the deleted category.
+    public void onCategoryDeleted() {
+        invalidateSearch();
+    }
+
+    public synchronized void invalidate() {
+        index = null;
+        tooLarge = false;
+        invalidateSearch();
+    }
+
+    private synchronized void invalidateSearch() {
+        writeCount++;
+        lastSearch = null;
+        lastSearchResults = null;
+    }
+
+    // Mirrors the ORDER BY of TaskQuery.ranked: title hits first, then due date and id.
+    private static List<Task> narrow(List<Task> tasks, TaskFilter filter, CancellationSignal cancellationSignal) {
+        TaskSearchQuery query = TaskSearchQuery.parse(filter.getText());
+        List<Task> titleHits = new ArrayList<>();
+        List<Task> otherHits = new ArrayList<>();
+        for (Task task : tasks) {
+            if (cancellationSignal != null) {
+                cancellationSignal.throwIfCanceled();
+            }
+            if (query.matchesTitle(task)) {
+                titleHits.add(task);
+            } else if (query.matches(task)) {
+                otherHits.add(task);
+            }
+        }
+
+        Comparator<Task> order = TaskOrder.byDueDate(filter.isSortAscending());
+        titleHits.sort(order);
+        otherHits.sort(order);
+        titleHits.addAll(otherHits);
+        return titleHits;
+    }
+
+    synchronized boolean isIndexed() {
+        return index != null;
+    }
+
+    // The count and the full read run outside the monitor, so other readers and the
+    // writer do not wait on them. A write committed meanwhile may or may not be in the
+    // rows read, so the result is only kept if no write happened since; otherwise this
+    // read goes to the database and the next one tries again.
+    private void loadIndex() {
+        final int version;
+        synchronized (this) {
+            if (index != null || tooLarge) {
+                return;
+            }
+            version = writeCount;
+        }
+
+        if (db.getTaskCount() > MAX_CACHED_TASKS) {
+            synchronized (this) {
+                if (version == writeCount) {
+                    tooLarge = true;
+                }
+            }
+            return;
+        }
+        TaskIndex loaded = new TaskIndex();
+        loaded.putAll(db.getAllTaskSummaries());
+
+        synchronized (this) {
+            if (index == null && version == writeCount) {
+                index = loaded;
+            }
+        }
+    }
+
+    private synchronized void cache(List<Task> tasks) {
+        if (index == null) {
+            return;
+        }
+        for (Task task : tasks) {
+            index.put(task.toSummary());
+        }
+        if (index.size() > MAX_CACHED_TASKS) {
+            index = null;
+            tooLarge = true;
+        }
+    }
+
+    private synchronized void evict(List<Integer> ids) {
+        // A table that outgrew the cache may fit again, recount on the next read.
+        tooLarge = false;
+        if (index == null) {
+            return;
+        }
+        for (int id : ids) {
+            index.remove(id);
+        }
+    }
+
+    private void refresh(List<Integer> ids) {
+        synchronized (this) {
+            if (index == null) {
+                return;
+            }
+        }
+        List<Task> tasks = db.getTaskSummariesByIds(ids);
+        cache(tasks);
+    }
+
+    private List<Task> withCategoryNames(List<Task> tasks) {
+        for (Task task : tasks) {
+            task.setCategoryName(categories.getName(task.getCategoryId()));
+        }
+        return tasks;
+    }
+
+    private static List<Task> summariesOf(List<Task> tasks) {
+        List<Task> summaries = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            summaries.add(task.toSummary());
+        }
+        return summaries;
+    }
+}
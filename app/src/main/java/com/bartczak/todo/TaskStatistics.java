@@ -0,0 +1,113 @@
+package com.bartczak.todo;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+// Counts shown by StatisticsActivity, read from the counters DatabaseHandler keeps
+// alongside the tasks.
+public class TaskStatistics {
+
+    static final int DAYS = 7;
+
+    private final LocalDate today;
+    private int overdue;
+    private int dueToday;
+    private int completedThisWeek;
+    private int createdThisWeek;
+    // Completed per day over the last DAYS days, today last.
+    private final int[] completedByDay = new int[DAYS];
+    private final List<CategoryCount> categories = new ArrayList<>();
+
+    TaskStatistics(LocalDate today) {
+        this.today = today;
+    }
+
+    public LocalDate getToday() {
+        return today;
+    }
+
+    public int getOverdue() {
+        return overdue;
+    }
+
+    void setOverdue(int overdue) {
+        this.overdue = overdue;
+    }
+
+    // Open tasks due later today, the ones already overdue are not included.
+    public int getDueToday() {
+        return dueToday;
+    }
+
+    void setDueToday(int dueToday) {
+        this.dueToday = dueToday;
+    }
+
+    public int getCompletedThisWeek() {
+        return completedThisWeek;
+    }
+
+    void setCompletedThisWeek(int completedThisWeek) {
+        this.completedThisWeek = completedThisWeek;
+    }
+
+    public int getCreatedThisWeek() {
+        return createdThisWeek;
+    }
+
+    void setCreatedThisWeek(int createdThisWeek) {
+        this.createdThisWeek = createdThisWeek;
+    }
+
+    public int[] getCompletedByDay() {
+        return completedByDay;
+    }
+
+    // Largest category first.
+    public List<CategoryCount> getCategories() {
+        return categories;
+    }
+
+    public int getTotal() {
+        int total = 0;
+        for (CategoryCount category : categories) {
+            total += category.getTotal();
+        }
+        return total;
+    }
+
+    public int getOpen() {
+        int open = 0;
+        for (CategoryCount category : categories) {
+            open += category.getOpen();
+        }
+        return open;
+    }
+
+    public static class CategoryCount {
+
+        private final String name;
+        private final int total;
+        private final int open;
+
+        CategoryCount(String name, int total, int open) {
+            this.name = name;
+            this.total = total;
+            this.open = open;
+        }
+
+        // Null for the tasks without a category or whose category was deleted.
+        public String getName() {
+            return name;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        public int getOpen() {
+            return open;
+        }
+    }
+}
@@ -1,25 +1,191 @@
 package com.bartczak.todo;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
 import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class TasksAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
 
-    private final List<Task> tasks;
+    public interface PageSource {
+        Future<?> loadPage(TaskPageKey after, int pageSize, AsyncDatabaseHandler.Callback<TaskPage> callback);
+    }
+
+    private static final int PAGE_SIZE = 50;
+    private static final int PREFETCH_DISTANCE = 15;
+
+    private static final Executor diffExecutor = Executors.newSingleThreadExecutor();
+
+    private final List<Task> tasks = new ArrayList<>();
+    private final Set<Integer> selectedIds = new LinkedHashSet<>();
     private final TasksViewClickListener tasksViewClickListener;
+    private final ThumbnailLoader thumbnailLoader;
     private DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm");
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private int submitGeneration = 0;
+    private int modificationCount = 0;
+    private boolean diffPending = false;
+
+    private PageSource pageSource;
+    private TaskPageKey nextKey;
+    private Future<?> pendingPage;
+    private boolean endReached = true;
+    private boolean replaceOnNextPage = false;
+    private int lastBoundPosition = 0;
 
-    public TasksAdapter(List<Task> tasks, TasksViewClickListener tasksViewClickListener) {
-        this.tasks = tasks;
+    public TasksAdapter(TasksViewClickListener tasksViewClickListener, ThumbnailLoader thumbnailLoader) {
         this.tasksViewClickListener = tasksViewClickListener;
+        this.thumbnailLoader = thumbnailLoader;
+        setHasStableIds(true);
+    }
+
+    public void setPageSource(PageSource pageSource) {
+        cancelPendingPage();
+        submitGeneration++;
+        diffPending = false;
+        this.pageSource = pageSource;
+        nextKey = null;
+        endReached = false;
+        replaceOnNextPage = true;
+        lastBoundPosition = 0;
+        loadNextPage();
+    }
+
+    public void setTasks(List<Task> newTasks) {
+        cancelPendingPage();
+        pageSource = null;
+        endReached = true;
+        submitTasks(newTasks, null);
+    }
+
+    public Task getTask(int position) {
+        return tasks.get(position);
+    }
+
+    public int indexOf(Task task) {
+        return tasks.indexOf(task);
+    }
+
+    public boolean isSelectionMode() {
+        return !selectedIds.isEmpty();
+    }
+
+    public void toggleSelection(int position) {
+        int id = tasks.get(position).getId();
+        if (!selectedIds.remove(id)) {
+            selectedIds.add(id);
+        }
+        notifyItemChanged(position);
+    }
+
+    public List<Integer> getSelectedIds() {
+        return new ArrayList<>(selectedIds);
+    }
+
+    public List<Task> getSelectedTasks() {
+        List<Task> selected = new ArrayList<>();
+        for (Task task : tasks) {
+            if (selectedIds.contains(task.getId())) {
+                selected.add(task);
+            }
+        }
+        return selected;
+    }
+
+    public void clearSelection() {
+        for (int i = 0; i < tasks.size(); i++) {
+            if (selectedIds.contains(tasks.get(i).getId())) {
+                notifyItemChanged(i);
+            }
+        }
+        selectedIds.clear();
+    }
+
+    public void removeTask(int position) {
+        tasks.remove(position);
+        modificationCount++;
+        notifyItemRemoved(position);
+    }
+
+    private void submitTasks(List<Task> newTasks, Runnable onApplied) {
+        final int generation = ++submitGeneration;
+        diffPending = true;
+        final int modifications = modificationCount;
+        final List<Task> oldTasks = new ArrayList<>(tasks);
+        final List<Task> updatedTasks = new ArrayList<>(newTasks);
+
+        diffExecutor.execute(() -> {
+            DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new TaskDiffCallback(oldTasks, updatedTasks), true);
+            mainHandler.post(() -> {
+                if (generation != submitGeneration) {
+                    return;
+                }
+                if (modifications != modificationCount) {
+                    submitTasks(updatedTasks, onApplied);
+                    return;
+                }
+                diffPending = false;
+                tasks.clear();
+                tasks.addAll(updatedTasks);
+                modificationCount++;
+                diff.dispatchUpdatesTo(this);
+                if (onApplied != null) {
+                    onApplied.run();
+                }
+            });
+        });
+    }
+
+    private void loadNextPage() {
+        if (pageSource == null || endReached || pendingPage != null || diffPending) {
+            return;
+        }
+
+        pendingPage = pageSource.loadPage(nextKey, PAGE_SIZE, page -> {
+            pendingPage = null;
+            nextKey = page.getNextKey();
+            endReached = page.isLast();
+            if (replaceOnNextPage) {
+                replaceOnNextPage = false;
+                submitTasks(page.getTasks(), this::loadNextPageIfNeeded);
+                return;
+            }
+            if (!page.getTasks().isEmpty()) {
+                int start = tasks.size();
+                tasks.addAll(page.getTasks());
+                modificationCount++;
+                notifyItemRangeInserted(start, page.getTasks().size());
+            }
+            loadNextPageIfNeeded();
+        });
+    }
+
+    private void loadNextPageIfNeeded() {
+        if (lastBoundPosition >= tasks.size() - PREFETCH_DISTANCE) {
+            loadNextPage();
+        }
+    }
+
+    private void cancelPendingPage() {
+        if (pendingPage != null) {
+            pendingPage.cancel(false);
+            pendingPage = null;
+        }
     }
 
     @NonNull
@@ -31,20 +197,63 @@ public class TasksAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder>
 
     @Override
     public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
+        lastBoundPosition = position;
+        loadNextPageIfNeeded();
+
         TasksViewHolder viewHolder = (TasksViewHolder) holder;
+        if (selectedIds.contains(tasks.get(position).getId()))
+            viewHolder.card.setCardBackgroundColor(ContextCompat.getColor(holder.itemView.getContext(), R.color.selected_task));
+        else
+            viewHolder.card.setCardBackgroundColor(viewHolder.defaultCardColor);
         viewHolder.title.setText(tasks.get(position).getTitle());
         viewHolder.description.setText(tasks.get(position).getDescription());
+        String categoryName = tasks.get(position).getCategoryName();
+        if (categoryName != null) {
+            viewHolder.category.setText(categoryName);
+            viewHolder.category.setVisibility(View.VISIBLE);
+        } else {
+            viewHolder.category.setVisibility(View.GONE);
+        }
         viewHolder.doneCheckBox.setChecked(tasks.get(position).isDone());
         viewHolder.dateCreated.setText(formatter.format(tasks.get(position).getCreatedAt()));
         viewHolder.dueDate.setText(formatter.format(tasks.get(position).getDueDate()));
-        if (viewHolder.doneCheckBox.isChecked())
+        // Completed tasks can lack the date, e.g. when imported from an archive without it.
+        if (viewHolder.doneCheckBox.isChecked() && tasks.get(position).getDoneAt() != null)
             viewHolder.dateDone.setText(formatter.format(tasks.get(position).getDoneAt()));
         else
             viewHolder.dateDone.setText("");
-        if (tasks.get(position).getAttachmentPath() != null)
+        if (tasks.get(position).hasAttachment())
             viewHolder.attachmentButton.setVisibility(View.VISIBLE);
         else
             viewHolder.attachmentButton.setVisibility(View.GONE);
+
+        cancelThumbnail(viewHolder);
+        String attachment = tasks.get(position).getAttachment();
+        if (attachment != null) {
+            viewHolder.thumbnailLoad = thumbnailLoader.load(attachment, viewHolder.attachmentThumbnail);
+        } else {
+            viewHolder.attachmentThumbnail.setTag(null);
+            viewHolder.attachmentThumbnail.setImageBitmap(null);
+            viewHolder.attachmentThumbnail.setVisibility(View.GONE);
+        }
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull RecyclerView.ViewHolder holder) {
+        cancelThumbnail((TasksViewHolder) holder);
+    }
+
+    // A load that already started still fills the caches, its result is only not shown.
+    private void cancelThumbnail(TasksViewHolder viewHolder) {
+        if (viewHolder.thumbnailLoad != null) {
+            viewHolder.thumbnailLoad.cancel(false);
+            viewHolder.thumbnailLoad = null;
+        }
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return tasks.get(position).getId();
     }
 
     @Override
@@ -4,4 +4,5 @@ import android.view.View;
 
 public interface TasksViewClickListener {
     void onClick (View v, int position);
+    boolean onLongClick (View v, int position);
 }
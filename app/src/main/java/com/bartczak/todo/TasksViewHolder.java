@@ -1,18 +1,26 @@
 package com.bartczak.todo;
 
+import android.content.res.ColorStateList;
 import android.view.View;
 import android.widget.Button;
 import android.widget.CheckBox;
+import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.cardview.widget.CardView;
 import androidx.recyclerview.widget.RecyclerView;
 
-public class TasksViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+import java.util.concurrent.Future;
+
+public class TasksViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener, View.OnLongClickListener {
     private final TasksViewClickListener tasksClickListener;
 
+    CardView card;
+    ColorStateList defaultCardColor;
     TextView title;
     TextView description;
+    TextView category;
     TextView dateCreated;
     TextView dateDone;
     TextView dueDate;
@@ -20,14 +28,19 @@ public class TasksViewHolder extends RecyclerView.ViewHolder implements View.OnC
     Button deleteButton;
     Button editButton;
     Button attachmentButton;
+    ImageView attachmentThumbnail;
+    Future<?> thumbnailLoad;
     
 
 
     public TasksViewHolder(View v, TasksViewClickListener tasksClickListener) {
         super(v);
         this.tasksClickListener = tasksClickListener;
+        card = v.findViewById(R.id.task_card);
+        defaultCardColor = card.getCardBackgroundColor();
         title = v.findViewById(R.id.task_title);
         description = v.findViewById(R.id.task_desc);
+        category = v.findViewById(R.id.task_category);
         dateCreated = v.findViewById(R.id.created_date);
         dateDone = v.findViewById(R.id.done_date);
         doneCheckBox = v.findViewById(R.id.done_checkbox);
@@ -35,11 +48,15 @@ public class TasksViewHolder extends RecyclerView.ViewHolder implements View.OnC
         editButton = v.findViewById(R.id.edit_button);
         dueDate = v.findViewById(R.id.due_date);
         attachmentButton = v.findViewById(R.id.attachment_button);
+        attachmentThumbnail = v.findViewById(R.id.attachment_thumbnail);
 
         doneCheckBox.setOnClickListener(this);
         deleteButton.setOnClickListener(this);
         editButton.setOnClickListener(this);
         attachmentButton.setOnClickListener(this);
+        attachmentThumbnail.setOnClickListener(this);
+        v.setOnClickListener(this);
+        v.setOnLongClickListener(this);
 
     }
 
@@ -47,4 +64,9 @@ public class TasksViewHolder extends RecyclerView.ViewHolder implements View.OnC
     public void onClick(View view) {
         tasksClickListener.onClick(view, getAdapterPosition());
     }
+
+    @Override
+    public boolean onLongClick(View view) {
+        return tasksClickListener.onLongClick(view, getAdapterPosition());
+    }
 }
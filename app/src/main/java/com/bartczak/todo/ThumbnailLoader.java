@@ -0,0 +1,283 @@
+package com.bartczak.todo;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.pdf.PdfRenderer;
+import android.media.ExifInterface;
+import android.media.MediaMetadataRetriever;
+import android.media.ThumbnailUtils;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.util.LruCache;
+import android.view.View;
+import android.widget.ImageView;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Square attachment previews for the task list. A thumbnail is generated once per
+// content hash at THUMBNAIL_SIZE_DP, kept in a bounded disk cache and served from an
+// in-memory LRU, so binding a row never decodes the attachment itself on the main thread.
+public class ThumbnailLoader {
+
+    private static final int THUMBNAIL_SIZE_DP = 56;
+    private static final int THREADS = 2;
+    private static final long MAX_DISK_CACHE_BYTES = 20 * 1024 * 1024;
+    private static final int JPEG_QUALITY = 85;
+
+    private static ThumbnailLoader instance;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final LruCache<String, Bitmap> memoryCache;
+    // Attachments of a type without a preview, so binding a row does not look them up
+    // again. Failed decodes are not kept here and are retried on the next bind.
+    private final Set<String> unsupported = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final AttachmentStore store;
+    private final File cacheDirectory;
+    private final int size;
+    private long diskCacheBytes = -1;
+
+    public static synchronized ThumbnailLoader getInstance(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            int size = Math.round(THUMBNAIL_SIZE_DP * appContext.getResources().getDisplayMetrics().density);
+            instance = new ThumbnailLoader(AttachmentStore.getInstance(appContext),
+                    new File(appContext.getCacheDir(), "thumbnails"), size);
+        }
+        return instance;
+    }
+
+    private ThumbnailLoader(AttachmentStore store, File cacheDirectory, int size) {
+        this.store = store;
+        this.cacheDirectory = cacheDirectory;
+        this.size = size;
+        // An eighth of the heap, counted in bytes rather than entries.
+        int maxBytes = (int) Math.min(Runtime.getRuntime().maxMemory() / 8, Integer.MAX_VALUE);
+        memoryCache = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+    }
+
+    // Shows the thumbnail of the attachment in view, which stays hidden until one is
+    // available. Results for a view that was rebound to another attachment meanwhile
+    // are dropped. Returns the pending load, or null when nothing had to be loaded.
+    public Future<?> load(String hash, ImageView view) {
+        view.setTag(hash);
+        Bitmap cached = memoryCache.get(hash);
+        if (cached != null) {
+            view.setImageBitmap(cached);
+            view.setVisibility(View.VISIBLE);
+            return null;
+        }
+        view.setImageBitmap(null);
+        view.setVisibility(View.GONE);
+        if (unsupported.contains(hash)) {
+            return null;
+        }
+
+        return executor.submit(() -> {
+            Bitmap bitmap = getThumbnail(hash);
+            if (bitmap == null) {
+                return;
+            }
+            mainHandler.post(() -> {
+                if (hash.equals(view.getTag())) {
+                    view.setImageBitmap(bitmap);
+                    view.setVisibility(View.VISIBLE);
+                }
+            });
+        });
+    }
+
+    private Bitmap getThumbnail(String hash) {
+        Bitmap bitmap = memoryCache.get(hash);
+        if (bitmap != null) {
+            return bitmap;
+        }
+
+        File cached = new File(cacheDirectory, hash);
+        if (cached.exists()) {
+            bitmap = BitmapFactory.decodeFile(cached.getPath());
+            cached.setLastModified(System.currentTimeMillis());
+        }
+        if (bitmap == null) {
+            // Tasks that still reference a file by path have no attachments row yet and
+            // get a preview once AttachmentGcWorker has moved the file into the store.
+            Attachment attachment = store.getAttachment(hash);
+            if (attachment == null) {
+                return null;
+            }
+            if (!hasPreview(attachment.getMimeType())) {
+                unsupported.add(hash);
+                return null;
+            }
+            bitmap = generate(store.resolve(hash), attachment.getMimeType());
+            if (bitmap == null) {
+                return null;
+            }
+            writeToDisk(cached, bitmap);
+        }
+        memoryCache.put(hash, bitmap);
+        return bitmap;
+    }
+
+    private static boolean hasPreview(String mimeType) {
+        return mimeType != null && (mimeType.startsWith("image/") || mimeType.startsWith("video/")
+                || mimeType.equals("application/pdf"));
+    }
+
+    private Bitmap generate(File file, String mimeType) {
+        try {
+            if (mimeType.startsWith("image/")) {
+                return decodeImage(file);
+            } else if (mimeType.startsWith("video/")) {
+                return decodeVideoFrame(file);
+            } else if (mimeType.equals("application/pdf")) {
+                return renderFirstPage(file);
+            }
+        } catch (IOException | RuntimeException e) {
+            // Unreadable for now, or corrupt: no preview this time.
+        }
+        return null;
+    }
+
+    private Bitmap decodeImage(File file) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        // Power of two subsampling while both sides stay at least the thumbnail size.
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= size && options.outHeight / (sampleSize * 2) >= size) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        Bitmap bitmap = BitmapFactory.decodeFile(file.getPath(), options);
+        if (bitmap == null) {
+            return null;
+        }
+
+        int degrees = getRotationDegrees(file);
+        if (degrees != 0) {
+            Matrix matrix = new Matrix();
+            matrix.postRotate(degrees);
+            Bitmap rotated = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+            if (rotated != bitmap) {
+                bitmap.recycle();
+            }
+            bitmap = rotated;
+        }
+        return crop(bitmap);
+    }
+
+    private static int getRotationDegrees(File file) throws IOException {
+        int orientation = new ExifInterface(file.getPath())
+                .getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                return 90;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                return 180;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                return 270;
+            default:
+                return 0;
+        }
+    }
+
+    private Bitmap decodeVideoFrame(File file) throws IOException {
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(file.getPath());
+            Bitmap frame = retriever.getScaledFrameAtTime(-1, MediaMetadataRetriever.OPTION_CLOSEST_SYNC, size, size);
+            return frame == null ? null : crop(frame);
+        } finally {
+            retriever.release();
+        }
+    }
+
+    private Bitmap renderFirstPage(File file) throws IOException {
+        try (ParcelFileDescriptor descriptor = ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+             PdfRenderer renderer = new PdfRenderer(descriptor)) {
+            if (renderer.getPageCount() == 0) {
+                return null;
+            }
+            try (PdfRenderer.Page page = renderer.openPage(0)) {
+                // Rendered at thumbnail width, pages are transparent where nothing is drawn.
+                int height = Math.max(1, size * page.getHeight() / Math.max(1, page.getWidth()));
+                Bitmap bitmap = Bitmap.createBitmap(size, height, Bitmap.Config.ARGB_8888);
+                bitmap.eraseColor(Color.WHITE);
+                page.render(bitmap, null, null, PdfRenderer.Page.RENDER_MODE_FOR_DISPLAY);
+                return crop(bitmap);
+            }
+        }
+    }
+
+    private Bitmap crop(Bitmap bitmap) {
+        return ThumbnailUtils.extractThumbnail(bitmap, size, size, ThumbnailUtils.OPTIONS_RECYCLE_INPUT);
+    }
+
+    // Evicts the least recently used thumbnails, by file modification time which reads
+    // refresh, once the cache grows past MAX_DISK_CACHE_BYTES.
+    private synchronized void writeToDisk(File file, Bitmap bitmap) {
+        if (!cacheDirectory.isDirectory() && !cacheDirectory.mkdirs()) {
+            return;
+        }
+        if (diskCacheBytes < 0) {
+            diskCacheBytes = 0;
+            for (File cached : listCached()) {
+                diskCacheBytes += cached.length();
+            }
+        }
+
+        Bitmap.CompressFormat format = bitmap.hasAlpha() ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG;
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            bitmap.compress(format, JPEG_QUALITY, out);
+        } catch (IOException e) {
+            file.delete();
+            return;
+        }
+        diskCacheBytes += file.length();
+        if (diskCacheBytes <= MAX_DISK_CACHE_BYTES) {
+            return;
+        }
+
+        File[] files = listCached();
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File cached : files) {
+            if (diskCacheBytes <= MAX_DISK_CACHE_BYTES * 3 / 4) {
+                break;
+            }
+            long length = cached.length();
+            if (cached.delete()) {
+                diskCacheBytes -= length;
+            }
+        }
+    }
+
+    private File[] listCached() {
+        File[] files = cacheDirectory.listFiles();
+        return files == null ? new File[0] : files;
+    }
+}
@@ -0,0 +1,179 @@
+package com.bartczak.todo;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+// Reference counting by the triggers on tasks, and what collectGarbage, which
+// AttachmentGcWorker runs once a day, removes and keeps. Rows and files are aged by
+// hand instead of waiting out the grace period.
+@RunWith(RobolectricTestRunner.class)
+public class AttachmentStoreTest {
+
+    private static final long TWO_DAYS_AGO = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(2);
+
+    private Context context;
+    private DatabaseHandler db;
+    private TaskRepository repository;
+    private File directory;
+    private AttachmentStore store;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        db = new DatabaseHandler(context);
+        repository = new TaskRepository(db, new CategoryRepository(db));
+        directory = new File(context.getFilesDir(), "attachments");
+        directory.mkdirs();
+        store = new AttachmentStore(directory, db, repository);
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void triggersCountReferences() throws IOException {
+        Attachment first = storeAttachment("first");
+        Attachment second = storeAttachment("second");
+        assertEquals(0, refCount(first));
+
+        Task one = addTask(first.getHash());
+        Task other = addTask(first.getHash());
+        assertEquals(2, refCount(first));
+
+        other.setAttachment(second.getHash());
+        repository.updateTask(other);
+        assertEquals(1, refCount(first));
+        assertEquals(1, refCount(second));
+
+        repository.deleteTask(one.getId());
+        assertEquals(0, refCount(first));
+
+        repository.setAttachment(other.getId(), null);
+        assertEquals(0, refCount(second));
+    }
+
+    @Test
+    public void collectGarbageRemovesOnlyLongUnreferencedAttachments() throws IOException {
+        Attachment referenced = storeAttachment("referenced");
+        addTask(referenced.getHash());
+        Attachment unreferenced = storeAttachment("unreferenced");
+        Attachment released = storeAttachment("released");
+        Task task = addTask(released.getHash());
+        repository.deleteTask(task.getId());
+        Attachment recent = storeAttachment("recent");
+        for (Attachment attachment : Arrays.asList(referenced, unreferenced, released)) {
+            db.addAttachment(attachment, TWO_DAYS_AGO);
+        }
+
+        store.collectGarbage();
+
+        assertStored(referenced);
+        assertRemoved(unreferenced);
+        assertRemoved(released);
+        assertStored(recent);
+    }
+
+    // Imports still being copied are temp files in the same directory.
+    @Test
+    public void collectGarbageSweepsOnlyOldStrayFiles() throws IOException {
+        File stray = write(new File(directory, "stray"), "stray");
+        stray.setLastModified(TWO_DAYS_AGO);
+        File importing = write(store.createTempFile(), "importing");
+
+        store.collectGarbage();
+
+        assertFalse(stray.exists());
+        assertTrue(importing.exists());
+    }
+
+    @Test
+    public void collectGarbageAdoptsLegacyPaths() throws IOException {
+        File legacy = write(new File(context.getFilesDir(), "scan.pdf"), "scanned");
+        Task first = addTask(legacy.getPath());
+        Task second = addTask(legacy.getPath());
+        Task missing = addTask(new File(context.getFilesDir(), "gone.pdf").getPath());
+
+        store.collectGarbage();
+
+        String hash = db.getTask(first.getId()).getAttachment();
+        Attachment adopted = store.getAttachment(hash);
+        assertNotNull(adopted);
+        assertEquals("scan.pdf", adopted.getName());
+        assertEquals(hash, db.getTask(second.getId()).getAttachment());
+        assertEquals(2, refCount(adopted));
+        assertTrue(store.resolve(hash).exists());
+        assertNull(db.getTask(missing.getId()).getAttachment());
+        assertEquals(Collections.emptyMap(), db.getLegacyAttachments());
+    }
+
+    private Attachment storeAttachment(String content) throws IOException {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        File temp = write(store.createTempFile(), content);
+        Attachment attachment = new Attachment();
+        attachment.setHash(AttachmentStore.toHex(AttachmentStore.newDigest().digest(bytes)));
+        attachment.setName(content + ".txt");
+        attachment.setSize(bytes.length);
+        attachment.setMimeType("text/plain");
+        return store.commit(temp, attachment);
+    }
+
+    private Task addTask(String attachment) {
+        Task task = new Task();
+        task.setTitle("Task");
+        task.setCreatedAt(LocalDateTime.now());
+        task.setDueDate(LocalDateTime.now().plusDays(1));
+        task.setAttachment(attachment);
+        repository.addTask(task);
+        return task;
+    }
+
+    private int refCount(Attachment attachment) {
+        try (Cursor cursor = db.getReadableDatabase().rawQuery("SELECT ref_count FROM attachments WHERE hash = ?",
+                new String[]{attachment.getHash()})) {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getInt(0);
+        }
+    }
+
+    private void assertStored(Attachment attachment) {
+        assertNotNull(store.getAttachment(attachment.getHash()));
+        assertTrue(store.resolve(attachment.getHash()).exists());
+    }
+
+    private void assertRemoved(Attachment attachment) {
+        assertNull(store.getAttachment(attachment.getHash()));
+        assertFalse(store.resolve(attachment.getHash()).exists());
+    }
+
+    private static File write(File file, String content) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        return file;
+    }
+}
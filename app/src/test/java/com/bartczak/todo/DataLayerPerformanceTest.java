@@ -0,0 +1,103 @@
+package com.bartczak.todo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.ParameterizedRobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+// Runs the database operations behind the task list against seeded datasets and fails
+// when one of them got slower or allocates more than recorded in PerformanceBaselines.
+// Left out of the regular unit test run, ./gradlew :app:testDebugUnitTest -Pperf runs it.
+@RunWith(ParameterizedRobolectricTestRunner.class)
+public class DataLayerPerformanceTest {
+
+    private static final int WARMUPS = 2;
+    private static final int RUNS = 5;
+    private static final int BATCH_SIZE = 1000;
+    private static final int PAGE_SIZE = 50;
+    private static final String SEARCH_TEXT = "bu";
+
+    @ParameterizedRobolectricTestRunner.Parameters(name = "{0} tasks")
+    public static List<Object[]> sizes() {
+        return Arrays.asList(new Object[][]{{10_000}, {100_000}});
+    }
+
+    private final int size;
+    private DatabaseHandler db;
+    private List<Task> tasks;
+
+    public DataLayerPerformanceTest(int size) {
+        this.size = size;
+    }
+
+    @Before
+    public void setUp() {
+        db = new DatabaseHandler(RuntimeEnvironment.getApplication());
+        for (int i = 1; i <= TaskDatasets.CATEGORIES; i++) {
+            Category category = new Category();
+            category.setName("Category " + i);
+            db.addCategory(category);
+        }
+        tasks = TaskDatasets.generate(size);
+        db.addTasks(tasks);
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    // Reads go first so they see exactly the seeded dataset.
+    @Test
+    public void staysWithinBaselines() throws IOException {
+        PerformanceBaselines baselines = PerformanceBaselines.load();
+
+        measure(baselines, "listAll", run -> db.getAllTaskSummaries());
+
+        TaskFilter all = new TaskFilter();
+        measure(baselines, "firstPage", run -> db.getTasksPage(all, null, PAGE_SIZE));
+
+        TaskFilter openInCategory = new TaskFilter();
+        openInCategory.setCategoryId(3);
+        openInCategory.setCompletion(TaskFilter.Completion.OPEN);
+        measure(baselines, "categoryPage", run -> db.getTasksPage(openInCategory, null, PAGE_SIZE));
+
+        TaskFilter search = new TaskFilter();
+        search.setText(SEARCH_TEXT);
+        measure(baselines, "search", run -> db.getTasks(search));
+
+        // Batches are prepared up front so building them is not measured.
+        List<List<Task>> inserts = new ArrayList<>();
+        List<List<Task>> updates = new ArrayList<>();
+        List<List<Integer>> deletes = new ArrayList<>();
+        for (int run = 0; run < WARMUPS + RUNS; run++) {
+            inserts.add(TaskDatasets.generate(BATCH_SIZE));
+            List<Task> batch = tasks.subList(run * BATCH_SIZE, (run + 1) * BATCH_SIZE);
+            List<Integer> ids = new ArrayList<>();
+            for (Task task : batch) {
+                task.setTitle(task.getTitle() + " edited");
+                task.setDone(!task.isDone());
+                ids.add(task.getId());
+            }
+            updates.add(batch);
+            deletes.add(ids);
+        }
+        measure(baselines, "insert", run -> db.addTasks(inserts.get(run)));
+        measure(baselines, "update", run -> db.updateTasks(updates.get(run)));
+        measure(baselines, "delete", run -> db.deleteTasks(deletes.get(run)));
+
+        baselines.verify();
+    }
+
+    private void measure(PerformanceBaselines baselines, String operation, IntConsumer run) {
+        baselines.check(operation + "." + size, Measurement.of(WARMUPS, RUNS, run));
+    }
+}
@@ -0,0 +1,256 @@
+package com.bartczak.todo;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+// Writes tasks the way version 3 of the app did, ISO date strings and all, and opens
+// the file with the current DatabaseHandler, which runs every migration since.
+@RunWith(RobolectricTestRunner.class)
+public class DatabaseMigrationsTest {
+
+    private static final String NAME = "migrated";
+    private static final int SIZE = 2000;
+    private static final int PAGE_SIZE = 500;
+    private static final String LEGACY_ATTACHMENT = "/storage/emulated/0/Download/scan.pdf";
+    private static final long DAY_MILLIS = 86_400_000L;
+
+    private Context context;
+    private List<Task> tasks;
+    private DatabaseHandler db;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        tasks = TaskDatasets.generate(SIZE);
+        for (int i = 0; i < tasks.size(); i += 100) {
+            tasks.get(i).setAttachment(LEGACY_ATTACHMENT);
+        }
+        // Version 3 never cleared the flag, not even for completed tasks.
+        for (int i = 0; i < tasks.size(); i += 3) {
+            tasks.get(i).setNotificationScheduled(true);
+        }
+
+        VersionThreeHelper helper = new VersionThreeHelper(context);
+        SQLiteDatabase v3 = helper.getWritableDatabase();
+        for (int i = 1; i <= TaskDatasets.CATEGORIES; i++) {
+            ContentValues values = new ContentValues();
+            values.put("name", "Category " + i);
+            v3.insert("categories", null, values);
+        }
+        for (Task task : tasks) {
+            v3.insert("tasks", null, versionThreeValues(task));
+        }
+        helper.close();
+
+        db = new DatabaseHandler(context, NAME);
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void upgradeKeepsEveryTaskAndConvertsItsDates() {
+        assertEquals(SIZE, db.getTaskCount());
+        assertEquals(TaskDatasets.CATEGORIES, db.getAllCategories().size());
+
+        int compared = 0;
+        for (List<Task> page = db.getTasksAfterId(0, PAGE_SIZE); !page.isEmpty();
+             page = db.getTasksAfterId(page.get(page.size() - 1).getId(), PAGE_SIZE)) {
+            for (Task migrated : page) {
+                Task original = tasks.get(migrated.getId() - 1);
+                assertEquals(original.getTitle(), migrated.getTitle());
+                assertEquals(original.getDescription(), migrated.getDescription());
+                assertEquals(original.getCreatedAt(), migrated.getCreatedAt());
+                assertEquals(original.getDueDate(), migrated.getDueDate());
+                assertEquals(original.getDoneAt(), migrated.getDoneAt());
+                assertEquals(original.isDone(), migrated.isDone());
+                assertEquals(original.isNotificationEnabled(), migrated.isNotificationEnabled());
+                assertEquals(original.getCategoryId(), migrated.getCategoryId());
+                assertEquals(original.getAttachment(), migrated.getAttachment());
+                if (migrated.isDone() || !migrated.isNotificationEnabled()) {
+                    assertFalse(migrated.isNotificationScheduled());
+                }
+                compared++;
+            }
+        }
+        assertEquals(SIZE, compared);
+        // Paths from before the attachment store are left for AttachmentGcWorker to adopt.
+        assertEquals(SIZE / 100, db.getLegacyAttachments().size());
+    }
+
+    @Test
+    public void upgradeStoresDatesAsEpochMillis() {
+        assertEquals(Collections.singletonList("integer"), strings("SELECT DISTINCT typeof(created_at) FROM tasks"
+                + " UNION SELECT DISTINCT typeof(due_date) FROM tasks"
+                + " UNION SELECT DISTINCT typeof(done_at) FROM tasks WHERE done_at IS NOT NULL"));
+        Task first = tasks.get(0);
+        assertEquals(String.valueOf(TaskDateCodec.encode(first.getDueDate())),
+                strings("SELECT due_date FROM tasks WHERE id = 1").get(0));
+    }
+
+    @Test
+    public void upgradeCreatesTheListIndexes() {
+        Set<String> indexes = new HashSet<>(strings("SELECT name FROM sqlite_master WHERE type = 'index'"));
+        assertTrue(indexes.contains("idx_tasks_due_date"));
+        assertTrue(indexes.contains("idx_tasks_category_due_date"));
+        assertTrue(indexes.contains("idx_tasks_done_due_date"));
+        assertTrue(indexes.contains("idx_tasks_reminders"));
+    }
+
+    @Test
+    public void upgradeIndexesExistingTasksForSearch() {
+        for (String text : new String[]{"bu", "gift re", "książka"}) {
+            TaskSearchQuery query = TaskSearchQuery.parse(text);
+            Set<Integer> expected = new HashSet<>();
+            for (Task task : tasks) {
+                if (query.matches(task)) {
+                    expected.add(task.getId());
+                }
+            }
+            TaskFilter filter = new TaskFilter();
+            filter.setText(text);
+            Set<Integer> found = new HashSet<>();
+            for (Task task : db.getTasks(filter)) {
+                found.add(task.getId());
+            }
+            assertFalse(text, expected.isEmpty());
+            assertEquals(text, expected, found);
+        }
+    }
+
+    @Test
+    public void upgradeFillsTheStatisticsCounters() {
+        Map<Long, int[]> days = new HashMap<>();
+        Map<Integer, int[]> categories = new HashMap<>();
+        for (Task task : tasks) {
+            day(days, task.getCreatedAt().toLocalDate().toEpochDay())[0]++;
+            if (task.isDone()) {
+                day(days, task.getDoneAt().toLocalDate().toEpochDay())[1]++;
+            } else {
+                day(days, task.getDueDate().toLocalDate().toEpochDay())[2]++;
+            }
+            int[] category = categories.computeIfAbsent(task.getCategoryId(), id -> new int[2]);
+            category[0]++;
+            category[1] += task.isDone() ? 0 : 1;
+        }
+
+        Map<Long, int[]> daily = new HashMap<>();
+        for (String[] row : rows("SELECT day, created, completed, open_due FROM task_stats_daily")) {
+            daily.put(Long.parseLong(row[0]), new int[]{Integer.parseInt(row[1]), Integer.parseInt(row[2]),
+                    Integer.parseInt(row[3])});
+        }
+        assertEquals(days.keySet(), daily.keySet());
+        for (Map.Entry<Long, int[]> day : days.entrySet()) {
+            int[] counters = daily.get(day.getKey());
+            assertEquals("created on day " + day.getKey(), day.getValue()[0], counters[0]);
+            assertEquals("completed on day " + day.getKey(), day.getValue()[1], counters[1]);
+            assertEquals("open due on day " + day.getKey(), day.getValue()[2], counters[2]);
+        }
+
+        Map<Integer, Integer> totals = new HashMap<>();
+        for (String[] row : rows("SELECT category_id, total, open FROM task_stats_category")) {
+            int id = Integer.parseInt(row[0]);
+            assertEquals("open in category " + id, categories.get(id)[1], Integer.parseInt(row[2]));
+            totals.put(id, Integer.parseInt(row[1]));
+        }
+        Map<Integer, Integer> expectedTotals = new HashMap<>();
+        for (Map.Entry<Integer, int[]> category : categories.entrySet()) {
+            expectedTotals.put(category.getKey(), category.getValue()[0]);
+        }
+        assertEquals(expectedTotals, totals);
+        assertEquals(expectedTotals, db.getTaskCountsByCategory());
+
+        // The triggers keep counting from there.
+        Task added = TaskDatasets.generate(1).get(0);
+        added.setCreatedAt(tasks.get(0).getCreatedAt());
+        db.addTask(added);
+        long firstDay = TaskDateCodec.encode(added.getCreatedAt()) / DAY_MILLIS;
+        assertEquals(String.valueOf(days.get(firstDay)[0] + 1),
+                strings("SELECT created FROM task_stats_daily WHERE day = " + firstDay).get(0));
+    }
+
+    private static int[] day(Map<Long, int[]> days, long day) {
+        return days.computeIfAbsent(day, d -> new int[3]);
+    }
+
+    // Dates as LocalDateTime.toString() wrote them, which leaves out zero seconds and
+    // fractions, and the category -1 for tasks without one.
+    private static ContentValues versionThreeValues(Task task) {
+        ContentValues values = new ContentValues();
+        values.put("title", task.getTitle());
+        values.put("description", task.getDescription());
+        values.put("attachment", task.getAttachment());
+        values.put("created_at", task.getCreatedAt().toString());
+        values.put("due_date", task.getDueDate().toString());
+        if (task.getDoneAt() != null) {
+            values.put("done_at", task.getDoneAt().toString());
+        }
+        values.put("done", task.isDone());
+        values.put("notification_enabled", task.isNotificationEnabled());
+        values.put("notification_scheduled", task.isNotificationScheduled());
+        values.put("category_id", task.getCategoryId());
+        return values;
+    }
+
+    private List<String> strings(String sql) {
+        List<String> values = new ArrayList<>();
+        for (String[] row : rows(sql)) {
+            values.add(row[0]);
+        }
+        return values;
+    }
+
+    private List<String[]> rows(String sql) {
+        List<String[]> rows = new ArrayList<>();
+        try (Cursor cursor = db.getReadableDatabase().rawQuery(sql, null)) {
+            while (cursor.moveToNext()) {
+                String[] row = new String[cursor.getColumnCount()];
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = cursor.getString(i);
+                }
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    private static class VersionThreeHelper extends SQLiteOpenHelper {
+
+        VersionThreeHelper(Context context) {
+            super(context, NAME, null, DatabaseMigrations.BASELINE_VERSION);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            DatabaseMigrations.createBaseline(db);
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        }
+    }
+}
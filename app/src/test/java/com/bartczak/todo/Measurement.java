@@ -0,0 +1,57 @@
+package com.bartczak.todo;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+// Median wall time and heap allocation of repeated runs of an operation. Allocation is
+// counted for the calling thread only, which is where the database handler maps rows to
+// tasks. Robolectric runs SQLite itself on a worker thread of its own, so filling cursor
+// windows is not included, and neither is memory SQLite allocates natively.
+final class Measurement {
+
+    private static final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final double millis;
+    private final long allocatedBytes;
+
+    private Measurement(double millis, long allocatedBytes) {
+        this.millis = millis;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    // The operation gets the index of the run, warmups included, so runs that change
+    // the database can each work on different rows.
+    static Measurement of(int warmups, int runs, IntConsumer operation) {
+        long thread = Thread.currentThread().getId();
+        for (int i = 0; i < warmups; i++) {
+            operation.accept(i);
+        }
+
+        long[] nanos = new long[runs];
+        long[] allocated = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            operation.accept(warmups + i);
+            nanos[i] = System.nanoTime() - start;
+            allocated[i] = threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+        }
+        return new Measurement(median(nanos) / 1_000_000.0, median(allocated));
+    }
+
+    double getMillis() {
+        return millis;
+    }
+
+    long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
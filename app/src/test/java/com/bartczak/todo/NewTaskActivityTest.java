@@ -0,0 +1,224 @@
+package com.bartczak.todo;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.os.Looper;
+import android.widget.Button;
+import android.widget.EditText;
+
+import androidx.test.core.app.ActivityScenario;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.lang.reflect.Field;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.robolectric.Shadows.shadowOf;
+
+// Drives NewTaskActivity through the shared data layer. Loads and saves run on the
+// executors of AsyncDatabaseHandler, so the tests idle the main looper until their
+// results are posted. Notifications stay off, which keeps WorkManager out of it.
+@RunWith(RobolectricTestRunner.class)
+public class NewTaskActivityTest {
+
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    private Context context;
+    private DatabaseHandler db;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        db = DatabaseHandler.getInstance(context);
+    }
+
+    // Robolectric closes the database after each test, the singletons would keep it.
+    @After
+    public void tearDown() throws ReflectiveOperationException {
+        for (Class<?> singleton : new Class<?>[]{AttachmentStore.class, TaskRepository.class,
+                CategoryRepository.class, DatabaseHandler.class}) {
+            Field instance = singleton.getDeclaredField("instance");
+            instance.setAccessible(true);
+            instance.set(null, null);
+        }
+    }
+
+    @Test
+    public void createAddsTask() {
+        try (ActivityScenario<NewTaskActivity> scenario = ActivityScenario.launchActivityForResult(NewTaskActivity.class)) {
+            NewTaskActivity activity = activity(scenario);
+            text(activity, R.id.task_title_edit).setText("Created");
+            text(activity, R.id.task_description_edit).setText("From the test");
+            text(activity, R.id.due_date_edit).setText("01-01-2030");
+            text(activity, R.id.due_time_edit).setText("12:00");
+            activity.findViewById(R.id.save_button).performClick();
+
+            waitFor(activity::isFinishing);
+            assertEquals(Activity.RESULT_OK, scenario.getResult().getResultCode());
+        }
+
+        Task created = findByTitle("Created");
+        assertNotNull(created);
+        assertEquals("From the test", created.getDescription());
+        assertFalse(created.isDone());
+    }
+
+    @Test
+    public void editLoadsAndUpdatesTask() {
+        Task task = addTask();
+
+        try (ActivityScenario<NewTaskActivity> scenario = ActivityScenario.launchActivityForResult(editIntent(task))) {
+            NewTaskActivity activity = activity(scenario);
+            Button save = activity.findViewById(R.id.save_button);
+            waitFor(save::isEnabled);
+            assertEquals(task.getTitle(), text(activity, R.id.task_title_edit).getText().toString());
+            assertEquals(task.getDescription(), text(activity, R.id.task_description_edit).getText().toString());
+
+            text(activity, R.id.task_title_edit).setText("Edited");
+            save.performClick();
+
+            waitFor(activity::isFinishing);
+            assertEquals(Activity.RESULT_OK, scenario.getResult().getResultCode());
+        }
+
+        Task edited = db.getTask(task.getId());
+        assertEquals("Edited", edited.getTitle());
+        assertEquals(task.getDescription(), edited.getDescription());
+        assertEquals(task.getCreatedAt(), edited.getCreatedAt());
+    }
+
+    // The statistics count completions by done_at, so moving it would move the task to
+    // another day there.
+    @Test
+    public void savingCompletedTaskKeepsItsDoneDateAndCounters() {
+        Task task = addTask();
+        LocalDateTime doneAt = LocalDateTime.of(2021, 3, 14, 9, 30);
+        task.setDone(true);
+        task.setDoneAt(doneAt);
+        db.updateTask(task);
+        List<String> counters = counters();
+
+        try (ActivityScenario<NewTaskActivity> scenario = ActivityScenario.launchActivityForResult(editIntent(task))) {
+            NewTaskActivity activity = activity(scenario);
+            Button save = activity.findViewById(R.id.save_button);
+            waitFor(save::isEnabled);
+            text(activity, R.id.task_title_edit).setText("Edited after completion");
+            save.performClick();
+            waitFor(activity::isFinishing);
+        }
+
+        Task edited = db.getTask(task.getId());
+        assertTrue(edited.isDone());
+        assertEquals(doneAt, edited.getDoneAt());
+        assertEquals(counters, counters());
+    }
+
+    // The reloaded task must not overwrite what was typed before the activity was
+    // recreated, and an attachment text without a reference behind it, left by an import
+    // that did not survive, is cleared.
+    @Test
+    public void recreateKeepsEditsAndClearsOrphanedAttachmentText() {
+        Task task = addTask();
+
+        try (ActivityScenario<NewTaskActivity> scenario = ActivityScenario.launch(editIntent(task))) {
+            NewTaskActivity before = activity(scenario);
+            waitFor(before.findViewById(R.id.save_button)::isEnabled);
+            text(before, R.id.task_title_edit).setText("Typed before recreate");
+            text(before, R.id.attachment_edit).setText("interrupted.pdf");
+
+            scenario.recreate();
+
+            NewTaskActivity after = activity(scenario);
+            waitFor(after.findViewById(R.id.save_button)::isEnabled);
+            assertEquals("Typed before recreate", text(after, R.id.task_title_edit).getText().toString());
+            assertEquals("", text(after, R.id.attachment_edit).getText().toString());
+        }
+    }
+
+    private Task addTask() {
+        Task task = TaskDatasets.generate(1).get(0);
+        task.setDone(false);
+        task.setDoneAt(null);
+        task.setNotificationEnabled(false);
+        task.setNotificationScheduled(false);
+        task.setAttachment(null);
+        task.setCategoryId(-1);
+        db.addTask(task);
+        return task;
+    }
+
+    private Intent editIntent(Task task) {
+        return new Intent(context, NewTaskActivity.class).putExtra(NewTaskActivity.EXTRA_TASK_ID, task.getId());
+    }
+
+    private Task findByTitle(String title) {
+        List<Task> tasks = db.getAllTaskSummaries();
+        for (Task task : tasks) {
+            if (title.equals(task.getTitle())) {
+                return db.getTask(task.getId());
+            }
+        }
+        return null;
+    }
+
+    // Every row of the statistics counter tables.
+    private List<String> counters() {
+        List<String> rows = new ArrayList<>();
+        for (String table : new String[]{"task_stats_daily", "task_stats_category"}) {
+            try (Cursor cursor = db.getReadableDatabase().rawQuery("SELECT * FROM " + table + " ORDER BY 1", null)) {
+                while (cursor.moveToNext()) {
+                    StringBuilder row = new StringBuilder(table);
+                    for (int i = 0; i < cursor.getColumnCount(); i++) {
+                        row.append(' ').append(cursor.getString(i));
+                    }
+                    rows.add(row.toString());
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static NewTaskActivity activity(ActivityScenario<NewTaskActivity> scenario) {
+        AtomicReference<NewTaskActivity> activity = new AtomicReference<>();
+        scenario.onActivity(activity::set);
+        return activity.get();
+    }
+
+    private static EditText text(Activity activity, int id) {
+        return activity.findViewById(id);
+    }
+
+    private static void waitFor(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (true) {
+            shadowOf(Looper.getMainLooper()).idle();
+            if (condition.getAsBoolean()) {
+                return;
+            }
+            if (System.currentTimeMillis() > deadline) {
+                fail("Timed out waiting for the activity");
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.bartczak.todo;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.TreeSet;
+
+import static org.junit.Assert.fail;
+
+// Checks measurements against perf-baselines.properties, which holds the median time in
+// milliseconds (<name>.ms) and the median allocation in kilobytes (<name>.allocatedKb) of
+// every measured operation. Run the tests with -PperfRecord to write the values measured
+// on this machine into that file instead, e.g. after an intended change in cost or on
+// new CI hardware.
+final class PerformanceBaselines {
+
+    private static final String RESOURCE = "perf-baselines.properties";
+    private static final String RECORD_PROPERTY = "perf.record";
+
+    // Timings vary between runs far more than allocation does. Operations that take only
+    // a few milliseconds also get an absolute allowance so scheduler noise does not fail
+    // them.
+    private static final double TIME_TOLERANCE = 3.0;
+    private static final double MIN_TIME_ALLOWANCE_MS = 5.0;
+    private static final double ALLOCATION_TOLERANCE = 1.5;
+
+    private final Properties baselines;
+    private final Properties measured = new Properties();
+    private final List<String> regressions = new ArrayList<>();
+    private final String recordPath = System.getProperty(RECORD_PROPERTY);
+
+    private PerformanceBaselines(Properties baselines) {
+        this.baselines = baselines;
+    }
+
+    static PerformanceBaselines load() throws IOException {
+        Properties baselines = new Properties();
+        try (InputStream in = PerformanceBaselines.class.getResourceAsStream(RESOURCE)) {
+            if (in != null) {
+                baselines.load(new InputStreamReader(in, StandardCharsets.UTF_8));
+            }
+        }
+        return new PerformanceBaselines(baselines);
+    }
+
+    void check(String name, Measurement measurement) {
+        String timeKey = name + ".ms";
+        String allocationKey = name + ".allocatedKb";
+        long allocatedKb = measurement.getAllocatedBytes() / 1024;
+        measured.setProperty(timeKey, String.format(Locale.ROOT, "%.1f", measurement.getMillis()));
+        measured.setProperty(allocationKey, String.valueOf(allocatedKb));
+        if (recordPath != null) {
+            return;
+        }
+
+        String baselineMillis = baselines.getProperty(timeKey);
+        String baselineKb = baselines.getProperty(allocationKey);
+        if (baselineMillis == null || baselineKb == null) {
+            regressions.add(name + ": no baseline, record one with -PperfRecord");
+            return;
+        }
+        double allowedMillis = Math.max(Double.parseDouble(baselineMillis) * TIME_TOLERANCE,
+                Double.parseDouble(baselineMillis) + MIN_TIME_ALLOWANCE_MS);
+        if (measurement.getMillis() > allowedMillis) {
+            regressions.add(String.format(Locale.ROOT, "%s: %.1f ms, baseline %s ms",
+                    name, measurement.getMillis(), baselineMillis));
+        }
+        if (allocatedKb > Long.parseLong(baselineKb) * ALLOCATION_TOLERANCE) {
+            regressions.add(String.format(Locale.ROOT, "%s: %d kB allocated, baseline %s kB",
+                    name, allocatedKb, baselineKb));
+        }
+    }
+
+    // Fails with every regression found rather than just the first one.
+    void verify() throws IOException {
+        if (recordPath != null) {
+            record(new File(recordPath), measured);
+            return;
+        }
+        if (!regressions.isEmpty()) {
+            fail("Slower than the baselines in " + RESOURCE + ":\n" + String.join("\n", regressions));
+        }
+    }
+
+    // Merged into the existing file, every dataset size is measured by its own test.
+    private static synchronized void record(File file, Properties measured) throws IOException {
+        Properties values = new Properties();
+        if (file.exists()) {
+            try (InputStream in = new FileInputStream(file)) {
+                values.load(new InputStreamReader(in, StandardCharsets.UTF_8));
+            }
+        }
+        values.putAll(measured);
+
+        // Written by hand so the keys stay sorted and the file diffs cleanly.
+        try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+            out.println("# Median time (ms) and heap allocation (kB) per operation and dataset size.");
+            out.println("# Checked by PerformanceBaselines, rewrite with: ./gradlew :app:testDebugUnitTest -PperfRecord");
+            for (String key : new TreeSet<>(values.stringPropertyNames())) {
+                out.println(key + "=" + values.getProperty(key));
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.bartczak.todo;
+
+import android.content.Context;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+import static org.junit.Assert.assertTrue;
+
+// Compares single reads and writes through one long-lived DatabaseHandler with the same
+// calls made the way the app used to make them: a handler of its own for every call,
+// which opens the database, compiles its statements and closes everything again.
+// Each side works on a database file of its own with the same tasks in it.
+@RunWith(RobolectricTestRunner.class)
+public class SharedConnectionLatencyTest {
+
+    private static final int SIZE = 1000;
+    private static final int WARMUPS = 20;
+    private static final int RUNS = 200;
+    private static final String REOPENED = "reopened";
+
+    // The shared connection has to be at least this many times faster per call.
+    private static final double MIN_SPEEDUP = 2.0;
+
+    private Context context;
+    private DatabaseHandler shared;
+    private List<Task> tasks;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        tasks = TaskDatasets.generate(SIZE);
+        shared = new DatabaseHandler(context);
+        shared.addTasks(tasks);
+        reopened(db -> db.addTasks(TaskDatasets.generate(SIZE)));
+    }
+
+    @After
+    public void tearDown() {
+        shared.close();
+    }
+
+    @Test
+    public void getTaskIsFasterOnTheSharedConnection() {
+        assertFaster("getTask", run -> shared.getTask(idOf(run)),
+                run -> reopened(db -> db.getTask(idOf(run))));
+    }
+
+    @Test
+    public void updateTaskIsFasterOnTheSharedConnection() {
+        assertFaster("updateTask", run -> shared.updateTask(toggled(run)),
+                run -> reopened(db -> db.updateTask(toggled(run))));
+    }
+
+    @Test
+    public void addTaskIsFasterOnTheSharedConnection() {
+        List<Task> added = TaskDatasets.generate(WARMUPS + RUNS);
+        List<Task> addedReopened = TaskDatasets.generate(WARMUPS + RUNS);
+        assertFaster("addTask", run -> shared.addTask(added.get(run)),
+                run -> reopened(db -> db.addTask(addedReopened.get(run))));
+    }
+
+    private void assertFaster(String operation, IntConsumer onShared, IntConsumer onReopened) {
+        Measurement sharedRun = Measurement.of(WARMUPS, RUNS, onShared);
+        Measurement reopenedRun = Measurement.of(WARMUPS, RUNS, onReopened);
+        assertTrue(String.format(Locale.ROOT, "%s: %.3f ms shared, %.3f ms reopened",
+                        operation, sharedRun.getMillis(), reopenedRun.getMillis()),
+                sharedRun.getMillis() * MIN_SPEEDUP < reopenedRun.getMillis());
+    }
+
+    private void reopened(Consumer<DatabaseHandler> call) {
+        DatabaseHandler db = new DatabaseHandler(context, REOPENED);
+        try {
+            call.accept(db);
+        } finally {
+            db.close();
+        }
+    }
+
+    private Task toggled(int run) {
+        Task task = tasks.get(run % SIZE);
+        task.setDone(!task.isDone());
+        return task;
+    }
+
+    private int idOf(int run) {
+        return tasks.get(run % SIZE).getId();
+    }
+}
@@ -0,0 +1,260 @@
+package com.bartczak.todo;
+
+import android.content.Context;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+// Exports a seeded dataset from one database and imports it into another, which already
+// has categories of its own, so every id is remapped on the way.
+@RunWith(RobolectricTestRunner.class)
+public class TaskArchiveTest {
+
+    private static final int SIZE = 100_000;
+    private static final int ATTACHMENTS = 3;
+    private static final int TASKS_PER_ATTACHMENT = 1000;
+    private static final int PAGE_SIZE = 1000;
+    private static final int LEGACY_TASKS = 10;
+    private static final String LEGACY_ATTACHMENT = "/storage/emulated/0/Download/scan.pdf";
+
+    private Context context;
+    private DatabaseHandler source;
+    private DatabaseHandler target;
+    private AttachmentStore sourceStore;
+    private AttachmentStore targetStore;
+    private File archive;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        source = new DatabaseHandler(context, "source");
+        target = new DatabaseHandler(context, "target");
+        sourceStore = new AttachmentStore(directory("source-attachments"), source, null);
+        targetStore = new AttachmentStore(directory("target-attachments"), target, null);
+        archive = new File(context.getCacheDir(), "archive.zip");
+    }
+
+    @After
+    public void tearDown() {
+        source.close();
+        target.close();
+    }
+
+    @Test
+    public void roundTripKeepsTasksCategoriesAndAttachments() throws IOException {
+        seed(SIZE);
+        // Its tasks keep the id, they are imported without a category.
+        source.deleteCategory(TaskDatasets.CATEGORIES);
+        addCategory(target, "Existing");
+        addCategory(target, "Category 3");
+
+        assertEquals(SIZE, export());
+        assertEquals(SIZE, importArchive(archive));
+
+        Map<Integer, String> sourceNames = categoryNames(source);
+        Map<Integer, String> targetNames = categoryNames(target);
+        assertEquals(TaskDatasets.CATEGORIES, targetNames.size());
+
+        int compared = 0;
+        int sourceAfter = 0;
+        int targetAfter = 0;
+        while (true) {
+            List<Task> sourcePage = source.getTasksAfterId(sourceAfter, PAGE_SIZE);
+            List<Task> targetPage = target.getTasksAfterId(targetAfter, PAGE_SIZE);
+            assertEquals(sourcePage.size(), targetPage.size());
+            if (sourcePage.isEmpty()) {
+                break;
+            }
+            for (int i = 0; i < sourcePage.size(); i++) {
+                assertSameTask(sourcePage.get(i), sourceNames, targetPage.get(i), targetNames);
+            }
+            compared += sourcePage.size();
+            sourceAfter = sourcePage.get(sourcePage.size() - 1).getId();
+            targetAfter = targetPage.get(targetPage.size() - 1).getId();
+        }
+        assertEquals(SIZE, compared);
+
+        for (Attachment attachment : source.getReferencedAttachmentsAfter(null, ATTACHMENTS)) {
+            Attachment imported = target.getAttachment(attachment.getHash());
+            assertEquals(attachment.getName(), imported.getName());
+            assertEquals(attachment.getSize(), imported.getSize());
+            assertEquals(attachment.getMimeType(), imported.getMimeType());
+            assertTrue(targetStore.resolve(attachment.getHash()).isFile());
+        }
+    }
+
+    @Test
+    public void damagedArchiveIsRejectedBeforeAnythingIsImported() throws IOException {
+        seed(TASKS_PER_ATTACHMENT * ATTACHMENTS);
+        export();
+
+        File damaged = new File(context.getCacheDir(), "damaged.zip");
+        try (ZipInputStream in = new ZipInputStream(new FileInputStream(archive));
+             ZipOutputStream out = new ZipOutputStream(new FileOutputStream(damaged))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                byte[] content = readAll(in);
+                if (entry.getName().startsWith("attachments/")) {
+                    content[0] ^= 1;
+                }
+                out.putNextEntry(new ZipEntry(entry.getName()));
+                out.write(content);
+                out.closeEntry();
+            }
+        }
+
+        try {
+            importArchive(damaged);
+            fail("Imported a damaged archive");
+        } catch (TaskArchive.FormatException e) {
+            // Expected.
+        }
+        assertEquals(0, target.getTaskCount());
+        assertTrue(target.getAllCategories().isEmpty());
+    }
+
+    // Paths from before the attachment store are not exported, their tasks are.
+    @Test
+    public void legacyAttachmentPathsAreLeftOut() throws IOException {
+        seed(TASKS_PER_ATTACHMENT * ATTACHMENTS);
+        List<Task> legacy = TaskDatasets.generate(LEGACY_TASKS);
+        for (Task task : legacy) {
+            task.setAttachment(LEGACY_ATTACHMENT);
+        }
+        source.addTasks(legacy);
+        int size = TASKS_PER_ATTACHMENT * ATTACHMENTS + LEGACY_TASKS;
+
+        assertEquals(size, export());
+        assertEquals(size, importArchive(archive));
+
+        List<Task> sourceTasks = source.getTasksAfterId(0, size);
+        List<Task> targetTasks = target.getTasksAfterId(0, size);
+        assertEquals(size, targetTasks.size());
+        int withoutAttachment = 0;
+        for (int i = 0; i < size; i++) {
+            String attachment = sourceTasks.get(i).getAttachment();
+            if (LEGACY_ATTACHMENT.equals(attachment)) {
+                assertNull(targetTasks.get(i).getAttachment());
+                withoutAttachment++;
+            } else {
+                assertEquals(attachment, targetTasks.get(i).getAttachment());
+            }
+            assertEquals(sourceTasks.get(i).getTitle(), targetTasks.get(i).getTitle());
+        }
+        assertEquals(LEGACY_TASKS, withoutAttachment);
+    }
+
+    private void seed(int size) throws IOException {
+        for (int i = 1; i <= TaskDatasets.CATEGORIES; i++) {
+            addCategory(source, "Category " + i);
+        }
+        List<String> hashes = new ArrayList<>();
+        for (int i = 0; i < ATTACHMENTS; i++) {
+            hashes.add(storeAttachment(sourceStore, "attachment " + i));
+        }
+        List<Task> tasks = TaskDatasets.generate(size);
+        for (int i = 0; i < tasks.size(); i += TASKS_PER_ATTACHMENT) {
+            tasks.get(i).setAttachment(hashes.get(i / TASKS_PER_ATTACHMENT % ATTACHMENTS));
+        }
+        source.addTasks(tasks);
+    }
+
+    private int export() throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(archive))) {
+            return new TaskArchive(context, source, sourceStore).export(out);
+        }
+    }
+
+    private int importArchive(File file) throws IOException {
+        return new TaskArchive(context, target, targetStore).importFrom(() -> new FileInputStream(file));
+    }
+
+    // Reminders are set up again on import, so notificationScheduled is not compared.
+    private static void assertSameTask(Task expected, Map<Integer, String> expectedNames,
+                                       Task actual, Map<Integer, String> actualNames) {
+        assertEquals(expected.getTitle(), actual.getTitle());
+        assertEquals(expected.getDescription(), actual.getDescription());
+        assertEquals(expected.getAttachment(), actual.getAttachment());
+        assertEquals(expected.getCreatedAt(), actual.getCreatedAt());
+        assertEquals(expected.getDueDate(), actual.getDueDate());
+        assertEquals(expected.getDoneAt(), actual.getDoneAt());
+        assertEquals(expected.isDone(), actual.isDone());
+        assertEquals(expected.isNotificationEnabled(), actual.isNotificationEnabled());
+        assertEquals(expectedNames.get(expected.getCategoryId()), actualNames.get(actual.getCategoryId()));
+        if (actualNames.get(actual.getCategoryId()) == null) {
+            assertEquals(-1, actual.getCategoryId());
+        }
+    }
+
+    private static Map<Integer, String> categoryNames(DatabaseHandler db) {
+        Map<Integer, String> names = new HashMap<>();
+        for (Category category : db.getAllCategories()) {
+            names.put(category.getId(), category.getName());
+        }
+        return names;
+    }
+
+    private static void addCategory(DatabaseHandler db, String name) {
+        Category category = new Category();
+        category.setName(name);
+        db.addCategory(category);
+    }
+
+    private static String storeAttachment(AttachmentStore store, String content) throws IOException {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        File temp = store.createTempFile();
+        try (OutputStream out = new FileOutputStream(temp)) {
+            out.write(bytes);
+        }
+        MessageDigest digest = AttachmentStore.newDigest();
+        Attachment attachment = new Attachment();
+        attachment.setHash(AttachmentStore.toHex(digest.digest(bytes)));
+        attachment.setName(content + ".txt");
+        attachment.setSize(bytes.length);
+        attachment.setMimeType("text/plain");
+        return store.commit(temp, attachment).getHash();
+    }
+
+    private File directory(String name) {
+        File directory = new File(context.getFilesDir(), name);
+        directory.mkdirs();
+        return directory;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,121 @@
+package com.bartczak.todo;
+
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// The update operations TasksAdapter dispatches for common changes to the list, as
+// calculated from TaskDiffCallback the way submitTasks does.
+public class TaskDiffCallbackTest {
+
+    private final List<Task> tasks = TaskDatasets.generate(5);
+
+    @Test
+    public void addedTaskIsOneInsert() {
+        List<Task> updated = copy(tasks);
+        Task added = TaskDatasets.generate(6).get(5);
+        updated.add(2, added);
+
+        assertEquals(Collections.singletonList("insert 2 1"), dispatch(tasks, updated));
+    }
+
+    @Test
+    public void deletedTasksAreOneRemove() {
+        List<Task> updated = copy(tasks);
+        updated.subList(1, 3).clear();
+
+        assertEquals(Collections.singletonList("remove 1 2"), dispatch(tasks, updated));
+    }
+
+    @Test
+    public void editedTaskIsOneChange() {
+        List<Task> updated = copy(tasks);
+        updated.get(3).setTitle("Edited");
+
+        assertEquals(Collections.singletonList("change 3 1"), dispatch(tasks, updated));
+    }
+
+    @Test
+    public void unchangedListDispatchesNothing() {
+        assertEquals(Collections.emptyList(), dispatch(tasks, copy(tasks)));
+    }
+
+    @Test
+    public void reversedOrderIsOnlyMoves() {
+        List<Task> updated = copy(tasks);
+        Collections.reverse(updated);
+
+        List<String> operations = dispatch(tasks, updated);
+        List<Integer> ids = ids(tasks);
+        for (String operation : operations) {
+            String[] parts = operation.split(" ");
+            assertEquals(operation, "move", parts[0]);
+            ids.add(Integer.parseInt(parts[2]), ids.remove(Integer.parseInt(parts[1])));
+        }
+        assertEquals(ids(updated), ids);
+    }
+
+    @Test
+    public void completedTaskMovedBySortingIsOneMoveAndOneChange() {
+        List<Task> updated = copy(tasks);
+        Task completed = updated.remove(0);
+        completed.setDone(true);
+        updated.add(completed);
+
+        List<String> operations = dispatch(tasks, updated);
+        assertEquals(operations.toString(), 2, operations.size());
+        assertTrue(operations.toString(), operations.get(0).startsWith("move "));
+        assertEquals("change 4 1", operations.get(1));
+    }
+
+    private static List<String> dispatch(List<Task> oldTasks, List<Task> newTasks) {
+        List<String> operations = new ArrayList<>();
+        DiffUtil.calculateDiff(new TaskDiffCallback(oldTasks, newTasks), true).dispatchUpdatesTo(new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                operations.add("insert " + position + " " + count);
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                operations.add("remove " + position + " " + count);
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                operations.add("move " + fromPosition + " " + toPosition);
+            }
+
+            @Override
+            public void onChanged(int position, int count, Object payload) {
+                operations.add("change " + position + " " + count);
+            }
+        });
+        return operations;
+    }
+
+    // Tasks are compared by content, so the lists handed to the adapter hold copies.
+    private static List<Task> copy(List<Task> tasks) {
+        List<Task> copies = new ArrayList<>();
+        for (Task task : tasks) {
+            copies.add(new Task(task));
+        }
+        return copies;
+    }
+
+    private static List<Integer> ids(List<Task> tasks) {
+        List<Integer> ids = new ArrayList<>();
+        for (Task task : tasks) {
+            ids.add(task.getId());
+        }
+        return ids;
+    }
+}
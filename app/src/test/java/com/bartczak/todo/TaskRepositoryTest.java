@@ -0,0 +1,160 @@
+package com.bartczak.todo;
+
+import android.content.Context;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+// Every list the repository answers from its index has to be what the database
+// returns for the same filter, after each kind of write.
+@RunWith(RobolectricTestRunner.class)
+public class TaskRepositoryTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2022, 1, 1, 9, 0);
+
+    private final TaskFilter all = new TaskFilter();
+    private Context context;
+    private DatabaseHandler db;
+    private TaskRepository repository;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        db = new DatabaseHandler(context);
+        repository = new TaskRepository(db, new CategoryRepository(db));
+        repository.addTasks(tasks(20));
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void indexFollowsUpdates() {
+        assertMatchesDatabase(all);
+        assertTrue(repository.isIndexed());
+
+        Task task = db.getTask(5);
+        task.setTitle("Moved to the end");
+        task.setDueDate(START.plusYears(1));
+        repository.updateTask(task);
+
+        assertMatchesDatabase(all);
+        List<Task> listed = repository.getTasks(all);
+        assertEquals("Moved to the end", listed.get(listed.size() - 1).getTitle());
+    }
+
+    @Test
+    public void indexFollowsDeletes() {
+        assertMatchesDatabase(all);
+
+        repository.deleteTask(3);
+        repository.deleteTasks(Arrays.asList(7, 8));
+
+        assertTrue(repository.isIndexed());
+        assertMatchesDatabase(all);
+        assertEquals(17, repository.getTasks(all).size());
+    }
+
+    @Test
+    public void indexFollowsCategoryChanges() {
+        TaskFilter inFirst = new TaskFilter();
+        inFirst.setCategoryId(1);
+        TaskFilter inSecond = new TaskFilter();
+        inSecond.setCategoryId(2);
+        assertMatchesDatabase(inFirst);
+
+        List<Integer> moved = new ArrayList<>();
+        for (Task task : repository.getTasks(inFirst)) {
+            moved.add(task.getId());
+        }
+        repository.setCategory(moved, 2);
+
+        assertTrue(repository.isIndexed());
+        assertMatchesDatabase(inFirst);
+        assertMatchesDatabase(inSecond);
+        assertEquals(Collections.emptyList(), repository.getTasks(inFirst));
+    }
+
+    // The write lands while the index is being read, so that read may or may not have
+    // seen it and must not be kept.
+    @Test
+    public void indexReadDuringWriteIsDropped() {
+        db.close();
+        Task added = task(100);
+        db = new DatabaseHandler(context) {
+            private boolean writing = true;
+
+            @Override
+            public List<Task> getAllTaskSummaries() {
+                if (writing) {
+                    writing = false;
+                    repository.addTask(added);
+                }
+                return super.getAllTaskSummaries();
+            }
+        };
+        repository = new TaskRepository(db, new CategoryRepository(db));
+
+        assertMatchesDatabase(all);
+        assertFalse(repository.isIndexed());
+
+        assertMatchesDatabase(all);
+        assertTrue(repository.isIndexed());
+        assertEquals(21, repository.getTasks(all).size());
+    }
+
+    @Test
+    public void tableThatOutgrewIndexIsIndexedAgainAfterDelete() {
+        repository.addTasks(tasks(TaskRepository.MAX_CACHED_TASKS - 20 + 1));
+
+        assertMatchesDatabase(all);
+        assertFalse(repository.isIndexed());
+
+        repository.deleteTask(1);
+
+        assertMatchesDatabase(all);
+        assertTrue(repository.isIndexed());
+    }
+
+    private void assertMatchesDatabase(TaskFilter filter) {
+        List<Task> listed = repository.getTasks(filter);
+        assertEquals(db.getTaskSummaries(filter), listed);
+    }
+
+    private static List<Task> tasks(int count) {
+        List<Task> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            tasks.add(task(i));
+        }
+        return tasks;
+    }
+
+    // Three categories and tasks without one, due dates out of insertion order.
+    private static Task task(int i) {
+        Task task = new Task();
+        task.setTitle("Task " + i);
+        task.setDescription("Description " + i);
+        task.setCreatedAt(START);
+        task.setDueDate(START.plusHours((i * 7L) % 30));
+        task.setDone(i % 4 == 0);
+        task.setNotificationEnabled(false);
+        task.setCategoryId(i % 4 == 3 ? -1 : i % 4 + 1);
+        return task;
+    }
+}
@@ -0,0 +1,82 @@
+package com.bartczak.todo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Attachment import copies: kernel transfer between files, the buffered path used for
+// streaming providers, and the buffered path with SHA-256 as AttachmentImporter runs it.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ChannelCopierBenchmark {
+
+    @Param({"1048576", "67108864", "314572800"})
+    public int bytes;
+
+    private File source;
+    private File destination;
+
+    @Setup
+    public void setUp() throws IOException {
+        source = File.createTempFile("copier-source", null);
+        destination = File.createTempFile("copier-destination", null);
+        byte[] chunk = new byte[ChannelCopier.BUFFER_SIZE];
+        new Random(TaskDatasets.SEED).nextBytes(chunk);
+        try (FileChannel out = new FileOutputStream(source).getChannel()) {
+            for (int written = 0; written < bytes; written += chunk.length) {
+                out.write(ByteBuffer.wrap(chunk, 0, Math.min(chunk.length, bytes - written)));
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        source.delete();
+        destination.delete();
+    }
+
+    @Benchmark
+    public long transfer() throws IOException {
+        try (FileInputStream in = new FileInputStream(source);
+             FileOutputStream out = new FileOutputStream(destination)) {
+            return ChannelCopier.copy(in.getChannel(), out.getChannel(), bytes, null);
+        }
+    }
+
+    @Benchmark
+    public long buffered() throws IOException {
+        try (FileInputStream in = new FileInputStream(source);
+             FileOutputStream out = new FileOutputStream(destination)) {
+            return ChannelCopier.copy(Channels.newChannel(in), out.getChannel(), bytes, null);
+        }
+    }
+
+    @Benchmark
+    public byte[] bufferedWithDigest() throws IOException, NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        try (FileInputStream in = new FileInputStream(source);
+             FileOutputStream out = new FileOutputStream(destination)) {
+            ChannelCopier.copy(in.getChannel(), out.getChannel(), bytes, digest, null);
+        }
+        return digest.digest();
+    }
+}
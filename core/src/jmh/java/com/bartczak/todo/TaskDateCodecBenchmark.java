@@ -0,0 +1,52 @@
+package com.bartczak.todo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Date encoding, which every row read and write and every in-memory sort goes through.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TaskDateCodecBenchmark {
+
+    private static final int DATES = 1024;
+
+    private final LocalDateTime[] dates = new LocalDateTime[DATES];
+    private final long[] encoded = new long[DATES];
+
+    @Setup
+    public void setUp() {
+        List<Task> tasks = TaskDatasets.generate(DATES);
+        for (int i = 0; i < DATES; i++) {
+            dates[i] = tasks.get(i).getDueDate();
+            encoded[i] = TaskDateCodec.encode(dates[i]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DATES)
+    public void encode(Blackhole blackhole) {
+        for (LocalDateTime date : dates) {
+            blackhole.consume(TaskDateCodec.encode(date));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DATES)
+    public void decode(Blackhole blackhole) {
+        for (long value : encoded) {
+            blackhole.consume(TaskDateCodec.decode(value));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.bartczak.todo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Filtering through the in-memory index: the first list page, a page deep into the
+// list, a due date range and a whole filtered list.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TaskIndexBenchmark {
+
+    private static final int PAGE_SIZE = 50;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int size;
+
+    private TaskIndex index;
+    private TaskFilter openInCategory;
+    private TaskFilter nextMonth;
+    private TaskPageKey middle;
+
+    @Setup
+    public void setUp() {
+        List<Task> tasks = TaskDatasets.generate(size);
+        index = new TaskIndex();
+        index.putAll(tasks);
+
+        openInCategory = new TaskFilter();
+        openInCategory.setCompletion(TaskFilter.Completion.OPEN);
+        openInCategory.setCategoryId(3);
+
+        nextMonth = new TaskFilter();
+        nextMonth.setDueFrom(LocalDateTime.of(2022, 6, 1, 0, 0));
+        nextMonth.setDueTo(LocalDateTime.of(2022, 7, 1, 0, 0));
+
+        List<Task> all = index.query(new TaskFilter(), null, 0);
+        middle = TaskPageKey.after(all.get(all.size() / 2));
+    }
+
+    @Benchmark
+    public List<Task> firstPage() {
+        return index.query(openInCategory, null, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Task> pageAfterKey() {
+        return index.query(openInCategory, middle, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Task> dueDateRange() {
+        return index.query(nextMonth, null, 0);
+    }
+
+    @Benchmark
+    public List<Task> wholeList() {
+        return index.query(openInCategory, null, 0);
+    }
+}
@@ -0,0 +1,52 @@
+package com.bartczak.todo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+// Building the SQL for a list page and for a ranked search, which happens on every
+// keystroke while searching.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TaskQueryBenchmark {
+
+    private TaskFilter filter;
+    private TaskFilter search;
+    private TaskPageKey after;
+
+    @Setup
+    public void setUp() {
+        filter = new TaskFilter();
+        filter.setCompletion(TaskFilter.Completion.OPEN);
+        filter.setCategoryId(3);
+        filter.setDueFrom(LocalDateTime.of(2022, 6, 1, 0, 0));
+
+        search = new TaskFilter();
+        search.setText("Żółw café plan");
+
+        after = TaskPageKey.after(TaskDatasets.generate(1).get(0));
+    }
+
+    @Benchmark
+    public TaskQuery page() {
+        return TaskQuery.page(filter, after, 50);
+    }
+
+    @Benchmark
+    public TaskQuery rankedSearch() {
+        return TaskQuery.ranked(search);
+    }
+
+    @Benchmark
+    public TaskSearchQuery parse() {
+        return TaskSearchQuery.parse(search.getText());
+    }
+}
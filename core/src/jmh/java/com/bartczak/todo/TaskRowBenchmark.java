@@ -0,0 +1,88 @@
+package com.bartczak.todo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Turning a row into a Task with its dates stored as before database version 5, ISO
+// strings parsed with LocalDateTime.parse, and as now, epoch millis through
+// TaskDateCodec. The column values are prepared up front, so only what the cursor
+// mapping does with them is measured, not reading them from SQLite.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TaskRowBenchmark {
+
+    private static final int ROWS = 1024;
+
+    private final Object[][] isoRows = new Object[ROWS][];
+    private final Object[][] epochRows = new Object[ROWS][];
+
+    @Setup
+    public void setUp() {
+        List<Task> tasks = TaskDatasets.generate(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            Task task = tasks.get(i);
+            LocalDateTime doneAt = task.getDoneAt();
+            isoRows[i] = row(task, task.getCreatedAt().toString(), task.getDueDate().toString(),
+                    doneAt == null ? null : doneAt.toString());
+            epochRows[i] = row(task, TaskDateCodec.encode(task.getCreatedAt()), TaskDateCodec.encode(task.getDueDate()),
+                    doneAt == null ? null : TaskDateCodec.encode(doneAt));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void isoStrings(Blackhole blackhole) {
+        for (Object[] row : isoRows) {
+            Task task = readColumns(row);
+            task.setCreatedAt(LocalDateTime.parse((String) row[3]));
+            task.setDueDate(LocalDateTime.parse((String) row[4]));
+            if (row[5] != null) {
+                task.setDoneAt(LocalDateTime.parse((String) row[5]));
+            }
+            blackhole.consume(task);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void epochMillis(Blackhole blackhole) {
+        for (Object[] row : epochRows) {
+            Task task = readColumns(row);
+            task.setCreatedAt(TaskDateCodec.decode((Long) row[3]));
+            task.setDueDate(TaskDateCodec.decode((Long) row[4]));
+            if (row[5] != null) {
+                task.setDoneAt(TaskDateCodec.decode((Long) row[5]));
+            }
+            blackhole.consume(task);
+        }
+    }
+
+    private static Object[] row(Task task, Object createdAt, Object dueDate, Object doneAt) {
+        return new Object[]{task.getId(), task.getTitle(), task.getDescription(), createdAt, dueDate, doneAt,
+                task.isDone() ? 1 : 0, task.isNotificationEnabled() ? 1 : 0, task.getCategoryId()};
+    }
+
+    // The columns both layouts have in common.
+    private static Task readColumns(Object[] row) {
+        Task task = new Task();
+        task.setId((Integer) row[0]);
+        task.setTitle((String) row[1]);
+        task.setDescription((String) row[2]);
+        task.setDone((Integer) row[6] == 1);
+        task.setNotificationEnabled((Integer) row[7] == 1);
+        task.setCategoryId((Integer) row[8]);
+        return task;
+    }
+}
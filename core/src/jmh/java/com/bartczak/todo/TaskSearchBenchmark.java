@@ -0,0 +1,58 @@
+package com.bartczak.todo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// In-memory search as used when a refined query narrows the previous results, with an
+// accented term to include the diacritic folding path.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TaskSearchBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int size;
+
+    @Param({"bu", "zo pla"})
+    public String text;
+
+    private List<Task> tasks;
+    private TaskSearchQuery query;
+
+    @Setup
+    public void setUp() {
+        tasks = TaskDatasets.generate(size);
+        query = TaskSearchQuery.parse(text);
+    }
+
+    @Benchmark
+    public int matchTitleAndDescription() {
+        int matches = 0;
+        for (Task task : tasks) {
+            if (query.matches(task)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    @Benchmark
+    public int matchTitle() {
+        int matches = 0;
+        for (Task task : tasks) {
+            if (query.matchesTitle(task)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,49 @@
+package com.bartczak.todo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Sorting in list order, as done when narrowing search results. Includes copying the
+// shuffled input, which is small next to the sort.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TaskSortBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int size;
+
+    private List<Task> shuffled;
+
+    @Setup
+    public void setUp() {
+        shuffled = TaskDatasets.generate(size);
+        Collections.shuffle(shuffled, new Random(TaskDatasets.SEED));
+    }
+
+    @Benchmark
+    public List<Task> ascending() {
+        List<Task> tasks = new ArrayList<>(shuffled);
+        tasks.sort(TaskOrder.byDueDate(true));
+        return tasks;
+    }
+
+    @Benchmark
+    public List<Task> descending() {
+        List<Task> tasks = new ArrayList<>(shuffled);
+        tasks.sort(TaskOrder.byDueDate(false));
+        return tasks;
+    }
+}
@@ -0,0 +1,52 @@
+package com.bartczak.todo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Row mapping: Task objects into TaskTable rows and back.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TaskTableBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int size;
+
+    private List<Task> tasks;
+    private TaskTable table;
+
+    @Setup
+    public void setUp() {
+        tasks = TaskDatasets.generate(size);
+        table = new TaskTable(size);
+        for (Task task : tasks) {
+            table.add(task);
+        }
+    }
+
+    @Benchmark
+    public TaskTable toRows() {
+        TaskTable rows = new TaskTable();
+        for (Task task : tasks) {
+            rows.add(task);
+        }
+        return rows;
+    }
+
+    @Benchmark
+    public void toTasks(Blackhole blackhole) {
+        for (int row = 0; row < size; row++) {
+            blackhole.consume(table.get(row));
+        }
+    }
+}
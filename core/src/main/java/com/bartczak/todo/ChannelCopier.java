@@ -0,0 +1,86 @@
+package com.bartczak.todo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.util.concurrent.CancellationException;
+
+// Copies a channel in large chunks, reporting progress and checking for cancellation
+// between chunks. Between two FileChannels the kernel does the copy (transferTo),
+// otherwise bytes go through one reusable direct buffer, which can also feed a digest so
+// the content is hashed in the same pass.
+public final class ChannelCopier {
+
+    public interface Listener {
+        void onProgress(long copied, long total);
+    }
+
+    public static final int BUFFER_SIZE = 256 * 1024;
+    private static final long TRANSFER_CHUNK = 8 * 1024 * 1024;
+
+    private ChannelCopier() {
+    }
+
+    // total is the expected size for progress reports, or -1 when unknown. Throws
+    // CancellationException when the calling thread is interrupted, leaving the
+    // destination as it is.
+    public static long copy(ReadableByteChannel in, WritableByteChannel out, long total, Listener listener)
+            throws IOException {
+        return copy(in, out, total, null, listener);
+    }
+
+    // Bytes that go through transferTo never reach user space, so hashing always takes
+    // the buffered path.
+    public static long copy(ReadableByteChannel in, WritableByteChannel out, long total, MessageDigest digest,
+                            Listener listener) throws IOException {
+        // A FileChannel may also wrap a pipe, which reports a size of 0.
+        if (digest == null && in instanceof FileChannel && ((FileChannel) in).size() > 0) {
+            return transfer((FileChannel) in, out, listener);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        long copied = 0;
+        while (in.read(buffer) != -1) {
+            buffer.flip();
+            if (digest != null) {
+                digest.update(buffer.duplicate());
+            }
+            while (buffer.hasRemaining()) {
+                copied += out.write(buffer);
+            }
+            buffer.clear();
+            checkCancelled();
+            if (listener != null) {
+                listener.onProgress(copied, total);
+            }
+        }
+        return copied;
+    }
+
+    private static long transfer(FileChannel in, WritableByteChannel out, Listener listener) throws IOException {
+        long start = in.position();
+        long total = in.size() - start;
+        long copied = 0;
+        while (copied < total) {
+            long transferred = in.transferTo(start + copied, Math.min(TRANSFER_CHUNK, total - copied), out);
+            if (transferred <= 0) {
+                break;
+            }
+            copied += transferred;
+            checkCancelled();
+            if (listener != null) {
+                listener.onProgress(copied, total);
+            }
+        }
+        return copied;
+    }
+
+    private static void checkCancelled() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.bartczak.todo;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+// Latency histograms, row counts and bytes read per named database operation, plus
+// the most recent slow operations. Latencies go into buckets that double in width
+// starting at 0.25 ms, enough to tell a 1 ms query from a 100 ms one without keeping
+// every sample.
+public class OperationMetrics {
+
+    private static final long FIRST_BUCKET_MICROS = 250;
+    // The last bucket collects everything from FIRST_BUCKET_MICROS << (BUCKETS - 2) on.
+    private static final int BUCKETS = 14;
+    private static final int SLOW_OPERATIONS = 20;
+
+    private final Map<String, Operation> operations = new TreeMap<>();
+    private final Deque<String> slowOperations = new ArrayDeque<>();
+
+    public synchronized void record(String operation, long nanos, long rows, long bytesRead) {
+        Operation stats = operations.get(operation);
+        if (stats == null) {
+            stats = new Operation();
+            operations.put(operation, stats);
+        }
+        stats.calls++;
+        stats.totalNanos += nanos;
+        stats.maxNanos = Math.max(stats.maxNanos, nanos);
+        stats.rows += rows;
+        stats.bytesRead += bytesRead;
+        stats.buckets[bucketOf(nanos)]++;
+    }
+
+    public synchronized void recordSlowOperation(String description) {
+        if (slowOperations.size() == SLOW_OPERATIONS) {
+            slowOperations.removeFirst();
+        }
+        slowOperations.addLast(description);
+    }
+
+    public synchronized void reset() {
+        operations.clear();
+        slowOperations.clear();
+    }
+
+    // Percentiles are given as the bucket they fall into.
+    public synchronized String dump() {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, Operation> entry : operations.entrySet()) {
+            Operation stats = entry.getValue();
+            out.append(String.format(Locale.ROOT,
+                    "%s: %d calls, mean %.2f ms, p50 %s, p90 %s, p99 %s, max %.2f ms, %d rows, %d kB read%n",
+                    entry.getKey(), stats.calls, stats.totalNanos / 1e6 / stats.calls,
+                    bucketLabel(stats.percentileBucket(0.5)), bucketLabel(stats.percentileBucket(0.9)),
+                    bucketLabel(stats.percentileBucket(0.99)), stats.maxNanos / 1e6, stats.rows,
+                    stats.bytesRead / 1024));
+            String separator = "  ";
+            for (int i = 0; i < BUCKETS; i++) {
+                if (stats.buckets[i] > 0) {
+                    out.append(separator).append(bucketLabel(i)).append(": ").append(stats.buckets[i]);
+                    separator = ", ";
+                }
+            }
+            out.append('\n');
+        }
+        if (!slowOperations.isEmpty()) {
+            out.append("\nSlow operations, most recent last:\n");
+            for (String operation : slowOperations) {
+                out.append(operation).append('\n');
+            }
+        }
+        return out.toString();
+    }
+
+    private static int bucketOf(long nanos) {
+        long steps = TimeUnit.NANOSECONDS.toMicros(nanos) / FIRST_BUCKET_MICROS;
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(steps));
+    }
+
+    private static String bucketLabel(int bucket) {
+        if (bucket == BUCKETS - 1) {
+            return String.format(Locale.ROOT, ">= %d ms", (FIRST_BUCKET_MICROS << (bucket - 1)) / 1000);
+        }
+        double millis = (FIRST_BUCKET_MICROS << bucket) / 1000.0;
+        return millis < 1 ? String.format(Locale.ROOT, "< %.2f ms", millis)
+                : String.format(Locale.ROOT, "< %.0f ms", millis);
+    }
+
+    private static class Operation {
+        long calls;
+        long totalNanos;
+        long maxNanos;
+        long rows;
+        long bytesRead;
+        final long[] buckets = new long[BUCKETS];
+
+        int percentileBucket(double percentile) {
+            long rank = (long) Math.ceil(calls * percentile);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return i;
+                }
+            }
+            return BUCKETS - 1;
+        }
+    }
+}
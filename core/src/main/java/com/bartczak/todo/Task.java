@@ -0,0 +1,205 @@
+package com.bartczak.todo;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+public class Task {
+
+    // Longest description prefix kept in list rows, in characters.
+    public static final int SUMMARY_DESCRIPTION_LENGTH = 120;
+
+    private int id;
+    private String title;
+    private String description;
+    private String attachment;
+    private LocalDateTime createdAt;
+    private LocalDateTime dueDate;
+    private LocalDateTime doneAt;
+    private boolean done;
+    private boolean notificationEnabled;
+    private boolean notificationScheduled;
+    private int categoryId;
+    private String categoryName;
+    private boolean hasAttachment;
+    private boolean summary;
+
+    public Task() {
+    }
+
+    public Task(Task other) {
+        this.id = other.id;
+        this.title = other.title;
+        this.description = other.description;
+        this.attachment = other.attachment;
+        this.createdAt = other.createdAt;
+        this.dueDate = other.dueDate;
+        this.doneAt = other.doneAt;
+        this.done = other.done;
+        this.notificationEnabled = other.notificationEnabled;
+        this.notificationScheduled = other.notificationScheduled;
+        this.categoryId = other.categoryId;
+        this.categoryName = other.categoryName;
+        this.hasAttachment = other.hasAttachment;
+        this.summary = other.summary;
+    }
+
+    // The list row form of this task: the description is cut to
+    // SUMMARY_DESCRIPTION_LENGTH. The attachment hash is kept for thumbnails. Summaries
+    // must not be written back, load the full task by id.
+    public Task toSummary() {
+        Task task = new Task(this);
+        if (description != null && description.codePointCount(0, description.length()) > SUMMARY_DESCRIPTION_LENGTH) {
+            task.description = description.substring(0, description.offsetByCodePoints(0, SUMMARY_DESCRIPTION_LENGTH));
+        }
+        task.summary = true;
+        return task;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    // Content hash of the attachment in AttachmentStore. Rows saved before the store
+    // existed may still hold a file path until AttachmentGcWorker adopts them.
+    public String getAttachment() {
+        return attachment;
+    }
+
+    public void setAttachment(String attachment) {
+        this.attachment = attachment;
+        this.hasAttachment = attachment != null;
+    }
+
+    public boolean hasAttachment() {
+        return hasAttachment;
+    }
+
+    public void setHasAttachment(boolean hasAttachment) {
+        this.hasAttachment = hasAttachment;
+    }
+
+    public boolean isSummary() {
+        return summary;
+    }
+
+    public void setSummary(boolean summary) {
+        this.summary = summary;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getDoneAt() {
+        return doneAt;
+    }
+
+    public void setDoneAt(LocalDateTime doneAt) {
+        this.doneAt = doneAt;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    public void setDone(boolean done) {
+        this.done = done;
+    }
+
+    public boolean isNotificationEnabled() {
+        return notificationEnabled;
+    }
+
+    public void setNotificationEnabled(boolean notificationEnabled) {
+        this.notificationEnabled = notificationEnabled;
+    }
+
+    public LocalDateTime getDueDate() {
+        return dueDate;
+    }
+
+    public void setDueDate(LocalDateTime dueDate) {
+        this.dueDate = dueDate;
+    }
+
+    public boolean isNotificationScheduled() {
+        return notificationScheduled;
+    }
+
+    public void setNotificationScheduled(boolean notificationScheduled) {
+        this.notificationScheduled = notificationScheduled;
+    }
+
+    public int getCategoryId() {
+        return categoryId;
+    }
+
+    public void setCategoryId(int categoryId) {
+        this.categoryId = categoryId;
+    }
+
+    // Read along with the task for display, never written back. Null without a
+    // category or when the category has been deleted.
+    public String getCategoryName() {
+        return categoryName;
+    }
+
+    public void setCategoryName(String categoryName) {
+        this.categoryName = categoryName;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        Task task = (Task) o;
+        return id == task.id
+                && categoryId == task.categoryId
+                && done == task.done
+                && notificationEnabled == task.notificationEnabled
+                && notificationScheduled == task.notificationScheduled
+                && hasAttachment == task.hasAttachment
+                && summary == task.summary
+                && Objects.equals(title, task.title)
+                && Objects.equals(description, task.description)
+                && Objects.equals(attachment, task.attachment)
+                && Objects.equals(categoryName, task.categoryName)
+                && Objects.equals(createdAt, task.createdAt)
+                && Objects.equals(dueDate, task.dueDate)
+                && Objects.equals(doneAt, task.doneAt);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, title, description, attachment, createdAt, dueDate, doneAt, done,
+                notificationEnabled, notificationScheduled, categoryId, categoryName, hasAttachment, summary);
+    }
+}
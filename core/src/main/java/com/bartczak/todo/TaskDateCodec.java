@@ -0,0 +1,23 @@
+package com.bartczak.todo;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+// Task dates are wall-clock LocalDateTimes, so they are stored as milliseconds since
+// the epoch read as UTC. This keeps the encoding independent of the device time zone
+// and matches what SQLite's strftime('%s') produces for the legacy ISO strings.
+public final class TaskDateCodec {
+
+    private TaskDateCodec() {
+    }
+
+    public static long encode(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC) * 1000 + dateTime.getNano() / 1_000_000;
+    }
+
+    public static LocalDateTime decode(long epochMillis) {
+        long seconds = Math.floorDiv(epochMillis, 1000L);
+        int nanos = (int) Math.floorMod(epochMillis, 1000L) * 1_000_000;
+        return LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,82 @@
+package com.bartczak.todo;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+public class TaskFilter {
+
+    public enum Completion {
+        ALL,
+        OPEN,
+        DONE
+    }
+
+    private Completion completion = Completion.ALL;
+    private int categoryId = -1;
+    private LocalDateTime dueFrom;
+    private LocalDateTime dueTo;
+    private String text = "";
+    private boolean sortAscending = true;
+
+    public Completion getCompletion() {
+        return completion;
+    }
+
+    public void setCompletion(Completion completion) {
+        this.completion = completion;
+    }
+
+    public int getCategoryId() {
+        return categoryId;
+    }
+
+    public void setCategoryId(int categoryId) {
+        this.categoryId = categoryId;
+    }
+
+    public LocalDateTime getDueFrom() {
+        return dueFrom;
+    }
+
+    public void setDueFrom(LocalDateTime dueFrom) {
+        this.dueFrom = dueFrom;
+    }
+
+    public LocalDateTime getDueTo() {
+        return dueTo;
+    }
+
+    public void setDueTo(LocalDateTime dueTo) {
+        this.dueTo = dueTo;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text == null ? "" : text;
+    }
+
+    public boolean hasText() {
+        return !TaskSearchQuery.parse(text).isEmpty();
+    }
+
+    // True when this filter can only ever match a subset of what the previous one did.
+    // Sort order is ignored, callers re-sort the narrowed results.
+    public boolean narrows(TaskFilter previous) {
+        return completion == previous.completion
+                && categoryId == previous.categoryId
+                && Objects.equals(dueFrom, previous.dueFrom)
+                && Objects.equals(dueTo, previous.dueTo)
+                && TaskSearchQuery.parse(text).refines(TaskSearchQuery.parse(previous.text));
+    }
+
+    public boolean isSortAscending() {
+        return sortAscending;
+    }
+
+    public void setSortAscending(boolean sortAscending) {
+        this.sortAscending = sortAscending;
+    }
+}
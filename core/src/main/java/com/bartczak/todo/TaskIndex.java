@@ -0,0 +1,136 @@
+package com.bartczak.todo;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+// In-memory copy of the tasks table, ordered the same way as the list queries:
+// by (due_date, id), globally and per category. Rows live in a TaskTable; Task objects
+// are only built for what get and query return, and callers own them. Not thread-safe.
+public class TaskIndex {
+
+    private static final class Entry implements Comparable<Entry> {
+        final long dueDate;
+        final int id;
+        final int row;
+
+        Entry(long dueDate, int id, int row) {
+            this.dueDate = dueDate;
+            this.id = id;
+            this.row = row;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int byDueDate = Long.compare(dueDate, other.dueDate);
+            return byDueDate != 0 ? byDueDate : Integer.compare(id, other.id);
+        }
+    }
+
+    private final TaskTable table = new TaskTable();
+    private final Map<Integer, Entry> byId = new HashMap<>();
+    private final TreeSet<Entry> byDueDate = new TreeSet<>();
+    private final Map<Integer, TreeSet<Entry>> byCategory = new HashMap<>();
+
+    public int size() {
+        return byId.size();
+    }
+
+    public Task get(int id) {
+        Entry entry = byId.get(id);
+        return entry == null ? null : table.get(entry.row);
+    }
+
+    public void put(Task task) {
+        remove(task.getId());
+        int row = table.add(task);
+        Entry entry = new Entry(table.getDueDate(row), task.getId(), row);
+        byId.put(task.getId(), entry);
+        byDueDate.add(entry);
+        TreeSet<Entry> category = byCategory.get(task.getCategoryId());
+        if (category == null) {
+            category = new TreeSet<>();
+            byCategory.put(task.getCategoryId(), category);
+        }
+        category.add(entry);
+    }
+
+    public void putAll(Collection<Task> tasks) {
+        for (Task task : tasks) {
+            put(task);
+        }
+    }
+
+    public void remove(int id) {
+        Entry entry = byId.remove(id);
+        if (entry == null) {
+            return;
+        }
+        byDueDate.remove(entry);
+        int categoryId = table.getCategoryId(entry.row);
+        TreeSet<Entry> category = byCategory.get(categoryId);
+        category.remove(entry);
+        if (category.isEmpty()) {
+            byCategory.remove(categoryId);
+        }
+        table.remove(entry.row);
+    }
+
+    // Number of tasks per category id, -1 counting the tasks without a category.
+    public Map<Integer, Integer> countByCategory() {
+        Map<Integer, Integer> counts = new HashMap<>();
+        for (Map.Entry<Integer, TreeSet<Entry>> category : byCategory.entrySet()) {
+            counts.put(category.getKey(), category.getValue().size());
+        }
+        return counts;
+    }
+
+    // Mirrors TaskQuery.page for filters without search text. A limit of 0 returns
+    // every matching task.
+    public List<Task> query(TaskFilter filter, TaskPageKey after, int limit) {
+        NavigableSet<Entry> entries = filter.getCategoryId() == -1 ? byDueDate : byCategory.get(filter.getCategoryId());
+        List<Task> result = new ArrayList<>();
+        if (entries == null) {
+            return result;
+        }
+
+        LocalDateTime dueFrom = filter.getDueFrom();
+        LocalDateTime dueTo = filter.getDueTo();
+        if (dueFrom != null) {
+            entries = entries.tailSet(new Entry(TaskDateCodec.encode(dueFrom), Integer.MIN_VALUE, -1), true);
+        }
+        if (dueTo != null) {
+            entries = entries.headSet(new Entry(TaskDateCodec.encode(dueTo), Integer.MIN_VALUE, -1), false);
+        }
+        if (after != null) {
+            Entry key = new Entry(after.getDueDate(), after.getId(), -1);
+            entries = filter.isSortAscending() ? entries.tailSet(key, false) : entries.headSet(key, false);
+        }
+
+        Iterator<Entry> iterator = filter.isSortAscending() ? entries.iterator() : entries.descendingIterator();
+        while (iterator.hasNext() && (limit <= 0 || result.size() < limit)) {
+            int row = iterator.next().row;
+            if (matchesCompletion(table.isDone(row), filter.getCompletion())) {
+                result.add(table.get(row));
+            }
+        }
+        return result;
+    }
+
+    private boolean matchesCompletion(boolean done, TaskFilter.Completion completion) {
+        switch (completion) {
+            case OPEN:
+                return !done;
+            case DONE:
+                return done;
+            default:
+                return true;
+        }
+    }
+}
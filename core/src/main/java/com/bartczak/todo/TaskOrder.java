@@ -0,0 +1,20 @@
+package com.bartczak.todo;
+
+import java.util.Comparator;
+
+// The order of the list queries, ORDER BY due_date, id, for sorting tasks in memory.
+// Due dates are compared as stored, at millisecond precision.
+public final class TaskOrder {
+
+    private static final Comparator<Task> ASCENDING =
+            Comparator.comparingLong((Task task) -> TaskDateCodec.encode(task.getDueDate()))
+                    .thenComparingInt(Task::getId);
+    private static final Comparator<Task> DESCENDING = ASCENDING.reversed();
+
+    private TaskOrder() {
+    }
+
+    public static Comparator<Task> byDueDate(boolean ascending) {
+        return ascending ? ASCENDING : DESCENDING;
+    }
+}
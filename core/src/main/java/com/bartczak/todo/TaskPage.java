@@ -0,0 +1,31 @@
+package com.bartczak.todo;
+
+import java.util.List;
+
+public final class TaskPage {
+
+    private final List<Task> tasks;
+    private final TaskPageKey nextKey;
+
+    public TaskPage(List<Task> tasks, TaskPageKey nextKey) {
+        this.tasks = tasks;
+        this.nextKey = nextKey;
+    }
+
+    public static TaskPage of(List<Task> rows, int pageSize) {
+        TaskPageKey nextKey = rows.size() < pageSize ? null : TaskPageKey.after(rows.get(rows.size() - 1));
+        return new TaskPage(rows, nextKey);
+    }
+
+    public List<Task> getTasks() {
+        return tasks;
+    }
+
+    public TaskPageKey getNextKey() {
+        return nextKey;
+    }
+
+    public boolean isLast() {
+        return nextKey == null;
+    }
+}
@@ -0,0 +1,24 @@
+package com.bartczak.todo;
+
+public final class TaskPageKey {
+
+    private final long dueDate;
+    private final int id;
+
+    public TaskPageKey(long dueDate, int id) {
+        this.dueDate = dueDate;
+        this.id = id;
+    }
+
+    public static TaskPageKey after(Task task) {
+        return new TaskPageKey(TaskDateCodec.encode(task.getDueDate()), task.getId());
+    }
+
+    public long getDueDate() {
+        return dueDate;
+    }
+
+    public int getId() {
+        return id;
+    }
+}
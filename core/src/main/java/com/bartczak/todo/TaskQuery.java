@@ -0,0 +1,150 @@
+package com.bartczak.todo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public final class TaskQuery {
+
+    // The schema names shared with the app's DatabaseHandler, defined only here.
+    public static final String TABLE_TASKS = "tasks";
+    public static final String TABLE_TASKS_FTS = "tasks_fts";
+    public static final String TABLE_CATEGORIES = "categories";
+
+    public static final String KEY_ID = "id";
+    public static final String KEY_TITLE = "title";
+    public static final String KEY_DESCRIPTION = "description";
+    public static final String KEY_ATTACHMENT = "attachment";
+    public static final String KEY_CREATED_AT = "created_at";
+    public static final String KEY_DUE_DATE = "due_date";
+    public static final String KEY_DONE_AT = "done_at";
+    public static final String KEY_DONE = "done";
+    public static final String KEY_NOTIFICATION_ENABLED = "notification_enabled";
+    public static final String KEY_NOTIFICATION_SCHEDULED = "notification_scheduled";
+    public static final String KEY_CATEGORY_ID_FK = "category_id";
+    public static final String KEY_CATEGORY_NAME = "name";
+
+    // categories has an id column as well, so the task's one is always qualified.
+    private static final String TASK_ID = TABLE_TASKS + "." + KEY_ID;
+
+    public static final String KEY_HAS_ATTACHMENT = "has_attachment";
+    public static final String KEY_TASK_CATEGORY_NAME = "category_name";
+
+    // Tasks with the name of their category, looked up by primary key per row. The
+    // LEFT JOIN keeps tasks as the outer loop, so the due-date indexes still order it.
+    public static final String TASKS_WITH_CATEGORY = TABLE_TASKS + " LEFT JOIN " + TABLE_CATEGORIES
+            + " ON " + TABLE_CATEGORIES + "." + KEY_ID + " = " + TABLE_TASKS + "." + KEY_CATEGORY_ID_FK;
+
+    private static final String CATEGORY_NAME_COLUMN = TABLE_CATEGORIES + "." + KEY_CATEGORY_NAME
+            + " AS " + KEY_TASK_CATEGORY_NAME;
+
+    // A complete task, to be read from TASKS_WITH_CATEGORY.
+    public static final String TASK_COLUMNS = TABLE_TASKS + ".*, " + CATEGORY_NAME_COLUMN;
+
+    // What a list row needs: a description preview instead of the full text, and the
+    // attachment hash to show its thumbnail. Read back with Task.isSummary() set. To be
+    // read from TASKS_WITH_CATEGORY.
+    public static final String SUMMARY_COLUMNS = TASK_ID + ", " + KEY_TITLE
+            + ", substr(" + KEY_DESCRIPTION + ", 1, " + Task.SUMMARY_DESCRIPTION_LENGTH + ") AS " + KEY_DESCRIPTION
+            + ", " + KEY_CREATED_AT + ", " + KEY_DUE_DATE + ", " + KEY_DONE_AT + ", " + KEY_DONE
+            + ", " + KEY_NOTIFICATION_ENABLED + ", " + KEY_NOTIFICATION_SCHEDULED + ", " + KEY_CATEGORY_ID_FK
+            + ", " + KEY_ATTACHMENT + ", " + KEY_ATTACHMENT + " IS NOT NULL AS " + KEY_HAS_ATTACHMENT
+            + ", " + CATEGORY_NAME_COLUMN;
+
+    private final String sql;
+    private final String[] args;
+
+    private TaskQuery(String sql, List<String> args) {
+        this.sql = sql;
+        this.args = args.toArray(new String[0]);
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public String[] getArgs() {
+        return args;
+    }
+
+    // Every filtered list: one statement, every value bound as a parameter, ordered by
+    // (due_date, id) so that the due-date indexes serve both the WHERE and the ORDER BY.
+    // Rows are summaries, a limit of 0 returns every match.
+    public static TaskQuery page(TaskFilter filter, TaskPageKey after, int limit) {
+        return page(filter, after, limit, SUMMARY_COLUMNS);
+    }
+
+    private static TaskQuery page(TaskFilter filter, TaskPageKey after, int limit, String columns) {
+        String direction = filter.isSortAscending() ? "ASC" : "DESC";
+        List<String> conditions = new ArrayList<>();
+        List<String> args = new ArrayList<>();
+        appendFilter(filter, conditions, args);
+        if (after != null) {
+            conditions.add("(" + KEY_DUE_DATE + ", " + TASK_ID + ") " + (filter.isSortAscending() ? ">" : "<") + " (?, ?)");
+            args.add(String.valueOf(after.getDueDate()));
+            args.add(String.valueOf(after.getId()));
+        }
+
+        StringBuilder sql = new StringBuilder("SELECT " + columns + " FROM " + TASKS_WITH_CATEGORY);
+        appendWhere(sql, conditions);
+        sql.append(" ORDER BY ").append(KEY_DUE_DATE).append(' ').append(direction)
+                .append(", ").append(TASK_ID).append(' ').append(direction);
+        if (limit > 0) {
+            sql.append(" LIMIT ").append(limit);
+        }
+        return new TaskQuery(sql.toString(), args);
+    }
+
+    // Same filter, but tasks whose title matches the search text are ranked above
+    // tasks that only match in the description. Rows are full tasks.
+    public static TaskQuery ranked(TaskFilter filter) {
+        TaskSearchQuery searchQuery = TaskSearchQuery.parse(filter.getText());
+        if (searchQuery.isEmpty()) {
+            return page(filter, null, 0, TASK_COLUMNS);
+        }
+
+        String direction = filter.isSortAscending() ? "ASC" : "DESC";
+        List<String> conditions = new ArrayList<>();
+        List<String> args = new ArrayList<>();
+        args.add(searchQuery.toMatchExpression(KEY_TITLE));
+        appendFilter(filter, conditions, args);
+
+        StringBuilder sql = new StringBuilder("SELECT " + TASK_COLUMNS + ", "
+                + TASK_ID + " IN (SELECT docid FROM " + TABLE_TASKS_FTS + " WHERE " + TABLE_TASKS_FTS + " MATCH ?) AS title_hit"
+                + " FROM " + TASKS_WITH_CATEGORY);
+        appendWhere(sql, conditions);
+        sql.append(" ORDER BY title_hit DESC, ").append(KEY_DUE_DATE).append(' ').append(direction)
+                .append(", ").append(TASK_ID).append(' ').append(direction);
+        return new TaskQuery(sql.toString(), args);
+    }
+
+    private static void appendFilter(TaskFilter filter, List<String> conditions, List<String> args) {
+        if (filter.getCompletion() == TaskFilter.Completion.OPEN) {
+            conditions.add(KEY_DONE + " = 0");
+        } else if (filter.getCompletion() == TaskFilter.Completion.DONE) {
+            conditions.add(KEY_DONE + " = 1");
+        }
+        if (filter.getCategoryId() != -1) {
+            conditions.add(KEY_CATEGORY_ID_FK + " = ?");
+            args.add(String.valueOf(filter.getCategoryId()));
+        }
+        if (filter.getDueFrom() != null) {
+            conditions.add(KEY_DUE_DATE + " >= ?");
+            args.add(String.valueOf(TaskDateCodec.encode(filter.getDueFrom())));
+        }
+        if (filter.getDueTo() != null) {
+            conditions.add(KEY_DUE_DATE + " < ?");
+            args.add(String.valueOf(TaskDateCodec.encode(filter.getDueTo())));
+        }
+        TaskSearchQuery searchQuery = TaskSearchQuery.parse(filter.getText());
+        if (!searchQuery.isEmpty()) {
+            conditions.add(TASK_ID + " IN (SELECT docid FROM " + TABLE_TASKS_FTS + " WHERE " + TABLE_TASKS_FTS + " MATCH ?)");
+            args.add(searchQuery.toMatchExpression());
+        }
+    }
+
+    private static void appendWhere(StringBuilder sql, List<String> conditions) {
+        if (!conditions.isEmpty()) {
+            sql.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.bartczak.todo;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+public final class TaskSearchQuery {
+
+    private final List<String> terms;
+
+    private TaskSearchQuery(List<String> terms) {
+        this.terms = Collections.unmodifiableList(terms);
+    }
+
+    // Only letters and digits survive tokenization, so the resulting MATCH expressions
+    // never contain FTS operators, quotes or column filters coming from user input.
+    public static TaskSearchQuery parse(String query) {
+        return new TaskSearchQuery(tokenize(query));
+    }
+
+    public boolean isEmpty() {
+        return terms.isEmpty();
+    }
+
+    public List<String> getTerms() {
+        return terms;
+    }
+
+    // True when every task matching this query also matches the previous one, i.e. each
+    // of the previous prefixes is extended by one of ours. Results of the previous query
+    // can then be narrowed in memory instead of asking the database again.
+    public boolean refines(TaskSearchQuery previous) {
+        if (previous.isEmpty()) {
+            return false;
+        }
+        for (String previousTerm : previous.terms) {
+            if (!hasPrefixMatch(terms, previousTerm)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // In-memory equivalent of the FTS MATCH: every term must prefix a token of the
+    // title or the description.
+    public boolean matches(Task task) {
+        List<String> tokens = tokenize(task.getTitle());
+        tokens.addAll(tokenize(task.getDescription()));
+        return matchesAll(tokens);
+    }
+
+    public boolean matchesTitle(Task task) {
+        return matchesAll(tokenize(task.getTitle()));
+    }
+
+    public String toMatchExpression() {
+        return buildMatchExpression(null);
+    }
+
+    public String toMatchExpression(String column) {
+        return buildMatchExpression(column);
+    }
+
+    private boolean matchesAll(List<String> tokens) {
+        for (String term : terms) {
+            boolean found = false;
+            for (String token : tokens) {
+                if (token.startsWith(term)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasPrefixMatch(List<String> candidates, String prefix) {
+        for (String candidate : candidates) {
+            if (candidate.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Splits on anything that is not a letter or digit, lowercases and strips
+    // diacritics, close to what the unicode61 tokenizer does on the database side.
+    private static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        String folded = isAscii(text) ? text : Normalizer.normalize(text, Normalizer.Form.NFD).replaceAll("\\p{M}+", "");
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i < folded.length(); i++) {
+            char c = folded.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                token.append(c);
+            } else if (token.length() > 0) {
+                tokens.add(token.toString().toLowerCase(Locale.ROOT));
+                token.setLength(0);
+            }
+        }
+        if (token.length() > 0) {
+            tokens.add(token.toString().toLowerCase(Locale.ROOT));
+        }
+        return tokens;
+    }
+
+    private static boolean isAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String buildMatchExpression(String column) {
+        StringBuilder expression = new StringBuilder();
+        for (String term : terms) {
+            if (expression.length() > 0) {
+                expression.append(' ');
+            }
+            if (column != null) {
+                expression.append(column).append(':');
+            }
+            expression.append(term).append('*');
+        }
+        return expression.toString();
+    }
+}
@@ -0,0 +1,147 @@
+package com.bartczak.todo;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+// Tasks stored column by column in parallel arrays, for holding many rows at once.
+// Dates are kept as TaskDateCodec values and the flags packed into one byte per row,
+// so a row costs a few dozen bytes plus its strings instead of a Task and three
+// LocalDateTimes. Rows are addressed by index; removed rows are reused by add.
+// Category names are not stored, they are looked up when rows are shown.
+// Not thread-safe.
+public final class TaskTable {
+
+    private static final int DONE = 1;
+    private static final int NOTIFICATION_ENABLED = 1 << 1;
+    private static final int NOTIFICATION_SCHEDULED = 1 << 2;
+    private static final int HAS_ATTACHMENT = 1 << 3;
+    private static final int SUMMARY = 1 << 4;
+
+    private static final long NO_DATE = Long.MIN_VALUE;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] ids;
+    private int[] categoryIds;
+    private long[] createdAt;
+    private long[] dueDates;
+    private long[] doneAt;
+    private byte[] flags;
+    private String[] titles;
+    private String[] descriptions;
+    private String[] attachments;
+
+    private int rowCount = 0;
+    private int[] freeRows = new int[0];
+    private int freeCount = 0;
+
+    public TaskTable() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public TaskTable(int capacity) {
+        allocate(Math.max(capacity, 1));
+    }
+
+    // Number of rows in use.
+    public int size() {
+        return rowCount - freeCount;
+    }
+
+    public int add(Task task) {
+        int row;
+        if (freeCount > 0) {
+            row = freeRows[--freeCount];
+        } else {
+            if (rowCount == ids.length) {
+                allocate(ids.length * 2);
+            }
+            row = rowCount++;
+        }
+        set(row, task);
+        return row;
+    }
+
+    public void set(int row, Task task) {
+        ids[row] = task.getId();
+        categoryIds[row] = task.getCategoryId();
+        createdAt[row] = encode(task.getCreatedAt());
+        dueDates[row] = encode(task.getDueDate());
+        doneAt[row] = encode(task.getDoneAt());
+        titles[row] = task.getTitle();
+        descriptions[row] = task.getDescription();
+        attachments[row] = task.getAttachment();
+        flags[row] = (byte) ((task.isDone() ? DONE : 0)
+                | (task.isNotificationEnabled() ? NOTIFICATION_ENABLED : 0)
+                | (task.isNotificationScheduled() ? NOTIFICATION_SCHEDULED : 0)
+                | (task.hasAttachment() ? HAS_ATTACHMENT : 0)
+                | (task.isSummary() ? SUMMARY : 0));
+    }
+
+    public void remove(int row) {
+        titles[row] = null;
+        descriptions[row] = null;
+        attachments[row] = null;
+        if (freeCount == freeRows.length) {
+            freeRows = Arrays.copyOf(freeRows, Math.max(INITIAL_CAPACITY, freeRows.length * 2));
+        }
+        freeRows[freeCount++] = row;
+    }
+
+    // A new Task with the row's values. Dates come back with the millisecond precision
+    // they are stored with in the database.
+    public Task get(int row) {
+        Task task = new Task();
+        task.setId(ids[row]);
+        task.setCategoryId(categoryIds[row]);
+        task.setCreatedAt(decode(createdAt[row]));
+        task.setDueDate(decode(dueDates[row]));
+        task.setDoneAt(decode(doneAt[row]));
+        task.setTitle(titles[row]);
+        task.setDescription(descriptions[row]);
+        task.setAttachment(attachments[row]);
+        int rowFlags = flags[row];
+        task.setDone((rowFlags & DONE) != 0);
+        task.setNotificationEnabled((rowFlags & NOTIFICATION_ENABLED) != 0);
+        task.setNotificationScheduled((rowFlags & NOTIFICATION_SCHEDULED) != 0);
+        task.setHasAttachment((rowFlags & HAS_ATTACHMENT) != 0);
+        task.setSummary((rowFlags & SUMMARY) != 0);
+        return task;
+    }
+
+    public int getId(int row) {
+        return ids[row];
+    }
+
+    public int getCategoryId(int row) {
+        return categoryIds[row];
+    }
+
+    // As a TaskDateCodec value.
+    public long getDueDate(int row) {
+        return dueDates[row];
+    }
+
+    public boolean isDone(int row) {
+        return (flags[row] & DONE) != 0;
+    }
+
+    private void allocate(int capacity) {
+        ids = ids == null ? new int[capacity] : Arrays.copyOf(ids, capacity);
+        categoryIds = categoryIds == null ? new int[capacity] : Arrays.copyOf(categoryIds, capacity);
+        createdAt = createdAt == null ? new long[capacity] : Arrays.copyOf(createdAt, capacity);
+        dueDates = dueDates == null ? new long[capacity] : Arrays.copyOf(dueDates, capacity);
+        doneAt = doneAt == null ? new long[capacity] : Arrays.copyOf(doneAt, capacity);
+        flags = flags == null ? new byte[capacity] : Arrays.copyOf(flags, capacity);
+        titles = titles == null ? new String[capacity] : Arrays.copyOf(titles, capacity);
+        descriptions = descriptions == null ? new String[capacity] : Arrays.copyOf(descriptions, capacity);
+        attachments = attachments == null ? new String[capacity] : Arrays.copyOf(attachments, capacity);
+    }
+
+    private static long encode(LocalDateTime dateTime) {
+        return dateTime == null ? NO_DATE : TaskDateCodec.encode(dateTime);
+    }
+
+    private static LocalDateTime decode(long value) {
+        return value == NO_DATE ? null : TaskDateCodec.decode(value);
+    }
+}
@@ -0,0 +1,63 @@
+package com.bartczak.todo;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Synthetic tasks for the benchmarks and the app's performance tests. The same seed
+// always gives the same tasks, so results of different runs are comparable.
+public final class TaskDatasets {
+
+    public static final long SEED = 42;
+
+    // Tasks reference category ids 1 to CATEGORIES, the ids SQLite hands out when that
+    // many categories are added to an empty table, or have no category (-1).
+    public static final int CATEGORIES = 10;
+
+    private static final String[] WORDS = {
+            "buy", "milk", "call", "mom", "report", "meeting", "dentist", "invoice", "groceries",
+            "train", "ticket", "birthday", "gift", "review", "draft", "email", "garden", "żółw",
+            "café", "naïve", "résumé", "książka", "plan", "budget", "car", "service", "tax",
+            "return", "flight", "hotel", "pay", "rent", "clean", "kitchen", "fix", "bike"
+    };
+    private static final LocalDateTime START = LocalDateTime.of(2022, 1, 1, 0, 0);
+
+    private TaskDatasets() {
+    }
+
+    public static List<Task> generate(int count) {
+        Random random = new Random(SEED);
+        List<Task> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Task task = new Task();
+            task.setId(i + 1);
+            task.setTitle(words(random, 2 + random.nextInt(3)));
+            task.setDescription(words(random, 5 + random.nextInt(20)));
+            task.setCreatedAt(START.plusMinutes(i));
+            // Spread over two years at millisecond precision, like rows read back from the database.
+            task.setDueDate(START.plusSeconds(random.nextInt(2 * 365 * 24 * 3600)).plusNanos(random.nextInt(1000) * 1_000_000L));
+            boolean done = random.nextInt(10) < 3;
+            task.setDone(done);
+            if (done) {
+                task.setDoneAt(task.getCreatedAt().plusDays(1));
+            }
+            task.setNotificationEnabled(random.nextBoolean());
+            int category = random.nextInt(CATEGORIES + 1);
+            task.setCategoryId(category == 0 ? -1 : category);
+            tasks.add(task);
+        }
+        return tasks;
+    }
+
+    private static String words(Random random, int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.toString();
+    }
+}